@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmark of the Java side of rendering, without PhantomJS.
+ *
+ * <p>Measures preparation of a page before the process starts: its
+ * JSON for {@code dom.js}, its temporary file and the process builder;
+ * parsing of the XHTML that comes back, from a string and from
+ * a stream; and conversion of static markup to DOM right in the JVM,
+ * which doesn't need the process at all, see {@link Inline}. Temporary
+ * files are deleted right away, instead of being left to {@link Sweep}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PipelineBench {
+
+    /**
+     * Number of DIV elements in the page.
+     * @checkstyle VisibilityModifier (3 lines)
+     */
+    @Param({ "10", "1000", "10000" })
+    public transient int divs;
+
+    /**
+     * The page.
+     */
+    private transient Page.Text page;
+
+    /**
+     * Engine that converts the page in the JVM.
+     */
+    private transient Engine inline;
+
+    /**
+     * XHTML of the page, as PhantomJS produces it.
+     */
+    private transient String xhtml;
+
+    /**
+     * The same XHTML, in UTF-8.
+     */
+    private transient byte[] bytes;
+
+    /**
+     * Prepare the page and its XHTML.
+     * @throws IOException If fails
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.page = new Page.Text(RenderBench.html(this.divs));
+        this.inline = new Inline(new Engine.Default());
+        this.xhtml = new Markup(this.page.html()).xhtml();
+        if (this.xhtml.isEmpty()) {
+            throw new IllegalStateException("the page is not static markup");
+        }
+        this.bytes = this.xhtml.getBytes(CharEncoding.UTF_8);
+    }
+
+    /**
+     * JSON of the page, sent to stdin of phantomjs.
+     * @return JSON
+     */
+    @Benchmark
+    public String json() {
+        return this.page.json();
+    }
+
+    /**
+     * Temporary file with the page, like {@link Page.Text#uri()} makes.
+     * @return The file, deleted already
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public File temp() throws IOException {
+        final Temp temp = new Temp(
+            new ByteArrayInputStream(
+                this.page.html().getBytes(CharEncoding.UTF_8)
+            ),
+            ".html"
+        );
+        try {
+            return temp.file();
+        } finally {
+            temp.close();
+        }
+    }
+
+    /**
+     * Process builder of the legacy file-based mode.
+     * @return Builder
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public ProcessBuilder builder() throws IOException {
+        final ProcessBuilder builder =
+            new Phandom(this.page.html()).builder();
+        final List<String> cmd = builder.command();
+        final File file = new File(cmd.get(cmd.size() - 1));
+        FileUtils.deleteQuietly(file);
+        Sweep.forget(file);
+        return builder;
+    }
+
+    /**
+     * XHTML parsed from a string, like {@link Session#dom()} does it.
+     * @return DOM
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public Document buffered() throws IOException {
+        return Phandom.parse(this.xhtml);
+    }
+
+    /**
+     * XHTML parsed from a stream, like {@link Phandom#dom(Engine)}
+     * does it.
+     * @return DOM
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public Document streamed() throws IOException {
+        return Phandom.parse(new ByteArrayInputStream(this.bytes));
+    }
+
+    /**
+     * Static markup converted to DOM without PhantomJS.
+     * @return DOM
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public Document markup() throws IOException {
+        return new Phandom(this.page.html()).dom(this.inline);
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmark of full rendering, through PhantomJS.
+ *
+ * <p>Pages of different sizes, given as text or as files, are
+ * rendered by a new process and by a pool of workers. Pages given as
+ * text go through PhantomJS too, even though they are static markup,
+ * see {@link PipelineBench#markup()} for their conversion in the JVM.
+ * PhantomJS must be installed.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RenderBench {
+
+    /**
+     * Number of DIV elements in the page.
+     * @checkstyle VisibilityModifier (3 lines)
+     */
+    @Param({ "10", "1000", "10000" })
+    public transient int divs;
+
+    /**
+     * Source of the page, "text" or "file".
+     * @checkstyle VisibilityModifier (3 lines)
+     */
+    @Param({ "text", "file" })
+    public transient String source;
+
+    /**
+     * Phandom to render.
+     */
+    private transient Phandom phandom;
+
+    /**
+     * File with the page, if it is a file.
+     */
+    private transient File file;
+
+    /**
+     * Pool of workers.
+     */
+    private transient Pool pool;
+
+    /**
+     * Prepare the page.
+     * @throws IOException If fails
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final String html = RenderBench.html(this.divs);
+        if ("file".equals(this.source)) {
+            this.file = File.createTempFile("phandom-bench", ".html");
+            FileUtils.write(this.file, html, CharEncoding.UTF_8);
+            this.phandom = new Phandom(this.file);
+        } else {
+            this.phandom = new Phandom(html);
+        }
+        this.pool = new Pool(1);
+    }
+
+    /**
+     * Clean up.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.close();
+        if (this.file != null) {
+            FileUtils.deleteQuietly(this.file);
+        }
+    }
+
+    /**
+     * New process, output streamed to the parser.
+     * @return DOM
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public Document spawned() throws IOException {
+        return this.phandom.dom(new Engine.Default());
+    }
+
+    /**
+     * Worker of a pool, output streamed to the parser.
+     * @return DOM
+     * @throws IOException If fails
+     */
+    @Benchmark
+    public Document pooled() throws IOException {
+        return this.phandom.dom(this.pool);
+    }
+
+    /**
+     * Generate HTML page.
+     * @param total Number of DIV elements in it
+     * @return HTML
+     */
+    static String html(final int total) {
+        final StringBuilder html = new StringBuilder(0)
+            .append("<html><head><title>bench</title></head><body>");
+        for (int idx = 0; idx < total; ++idx) {
+            html.append("<div class='foo' style='color:red'>")
+                .append(idx)
+                .append(" &lt; <b>bold</b> &amp; <i>italic</i></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseProcess;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.validation.constraints.NotNull;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * PhantomJS binary, discovered and probed once per JVM.
+ *
+ * <p>The binary is taken from {@code phandom.bin} system property,
+ * or from {@code PHANDOM_BIN} environment variable, or is found as
+ * {@code phantomjs} in {@code PATH}, in this order. It can also be set
+ * programmatically, with {@link #use(String)}:
+ *
+ * <pre>Binary.use("/opt/phantomjs-2.1.1/bin/phantomjs");
+ * if (Binary.current().supports(2, 0)) {
+ *   // disk cache path and other features of PhantomJS 2.x work
+ * }</pre>
+ *
+ * <p>Its version is detected by {@code phantomjs --version} only once,
+ * when the binary is discovered or set, and the result, positive or
+ * negative, is cached until the next {@link #use(String)}.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode(of = { "bin", "ver" })
+public final class Binary {
+
+    /**
+     * Default name of the binary.
+     */
+    private static final String NAME = "phantomjs";
+
+    /**
+     * Pattern to match phantomjs version.
+     */
+    private static final Pattern VERSION =
+        Pattern.compile("(\\d+)\\.(\\d+)\\.\\d+");
+
+    /**
+     * Current binary, or NULL if not discovered yet.
+     */
+    private static final AtomicReference<Binary> CURRENT =
+        new AtomicReference<Binary>();
+
+    /**
+     * Path of the binary, or its name.
+     */
+    private final transient String bin;
+
+    /**
+     * Version, e.g. "2.1.1", or empty if it is not installed.
+     */
+    private final transient String ver;
+
+    /**
+     * Ctor.
+     * @param path Path of the binary
+     * @param version Its version, or empty
+     */
+    private Binary(final String path, final String version) {
+        this.bin = path;
+        this.ver = version;
+    }
+
+    /**
+     * Current binary, discovered and probed at the first call.
+     * @return Binary
+     */
+    public static Binary current() {
+        Binary binary = Binary.CURRENT.get();
+        if (binary == null) {
+            synchronized (Binary.CURRENT) {
+                binary = Binary.CURRENT.get();
+                if (binary == null) {
+                    binary = Binary.probe(Binary.discover());
+                    Binary.CURRENT.set(binary);
+                }
+            }
+        }
+        return binary;
+    }
+
+    /**
+     * Use this binary from now on, instead of the discovered one.
+     * @param path Path of the binary, e.g. "/usr/local/bin/phantomjs"
+     * @return The binary, probed
+     */
+    public static Binary use(@NotNull final String path) {
+        final Binary binary = Binary.probe(path);
+        Binary.CURRENT.set(binary);
+        return binary;
+    }
+
+    /**
+     * Path of the binary (or just its name, if it was not found).
+     * @return Path
+     */
+    public String path() {
+        return this.bin;
+    }
+
+    /**
+     * Is it installed and working?
+     * @return TRUE if it is
+     */
+    public boolean installed() {
+        return !this.ver.isEmpty();
+    }
+
+    /**
+     * Version of it.
+     * @return Version, e.g. "2.1.1", or empty if it is not installed
+     */
+    public String version() {
+        return this.ver;
+    }
+
+    /**
+     * Is it installed and at least of this version?
+     * @param major Major version, e.g. 2
+     * @param minor Minor version, e.g. 0
+     * @return TRUE if it is
+     */
+    public boolean supports(final int major, final int minor) {
+        final Matcher matcher = Binary.VERSION.matcher(this.ver);
+        boolean yes = false;
+        if (matcher.matches()) {
+            final int maj = Integer.parseInt(matcher.group(1));
+            yes = maj > major
+                || maj == major && Integer.parseInt(matcher.group(2)) >= minor;
+        }
+        return yes;
+    }
+
+    /**
+     * Find the binary.
+     * @return Path of it, or just its name if not found
+     */
+    private static String discover() {
+        String path = System.getProperty("phandom.bin");
+        if (path == null || path.isEmpty()) {
+            path = System.getenv("PHANDOM_BIN");
+        }
+        if (path == null || path.isEmpty()) {
+            path = Binary.NAME;
+            final String dirs = System.getenv("PATH");
+            if (dirs != null) {
+                for (final String dir : dirs.split(File.pathSeparator)) {
+                    final File file = Binary.executable(new File(dir));
+                    if (file != null) {
+                        path = file.getAbsolutePath();
+                        break;
+                    }
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Find executable binary in the directory.
+     * @param dir The directory
+     * @return The file or NULL if it is not there
+     */
+    private static File executable(final File dir) {
+        File found = null;
+        for (final String name : new String[] {Binary.NAME, "phantomjs.exe"}) {
+            final File file = new File(dir, name);
+            if (file.isFile() && file.canExecute()) {
+                found = file;
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Detect version of the binary.
+     * @param path Path of the binary
+     * @return Binary
+     */
+    private static Binary probe(final String path) {
+        String stdout;
+        try {
+            stdout = new VerboseProcess(
+                new ProcessBuilder(path, "--version"),
+                Level.FINE, Level.FINE
+            ).stdoutQuietly().trim();
+        } catch (final IllegalStateException ex) {
+            stdout = "";
+        }
+        final Binary binary;
+        if (Binary.VERSION.matcher(stdout).matches()) {
+            binary = new Binary(path, stdout);
+            Logger.info(Binary.class, "phantomjs %s at %s", stdout, path);
+        } else {
+            binary = new Binary(path, "");
+            Logger.info(Binary.class, "phantomjs is not found at %s", path);
+        }
+        return binary;
+    }
+
+}
@@ -0,0 +1,401 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Loggable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.ToString;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Content-addressed cache of rendered text pages.
+ *
+ * <p>The cache decorates another engine. Text pages with the same
+ * HTML content, base URL and options are rendered only once: the result
+ * is kept in memory, in a bounded LRU map, and optionally in files in
+ * the given directory, which survive JVM restarts and are bounded
+ * the same way, the least recently used ones are deleted. Web pages
+ * are never cached, since their content may change on the server:
+ *
+ * <pre>Cache cache = new Cache(new Engine.Default(), 100);
+ * Document dom = new Phandom(html).dom(cache);
+ * Logger.info(this, "%d hits, %d misses", cache.hits(), cache.misses());</pre>
+ *
+ * <p>The key of a page includes the digest of {@code dom.js}, the path
+ * and the version of phantomjs, and the options of processes of the
+ * original engine (when they are known, see {@link Launch}), so that
+ * a result is not reused after any of them changes.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString(of = { "origin", "dir" })
+@Loggable(Loggable.DEBUG)
+public final class Cache implements Engine, Launch.Source {
+
+    /**
+     * Default maximum number of files on disk.
+     */
+    private static final int FILES = 10000;
+
+    /**
+     * Original engine.
+     */
+    private final transient Engine origin;
+
+    /**
+     * Directory for files, or empty if there is no disk tier.
+     */
+    private final transient String dir;
+
+    /**
+     * Rendered pages in memory, by their hashes.
+     */
+    private final transient Map<String, String> memory;
+
+    /**
+     * Names of files on disk, least recently used first.
+     */
+    private final transient Map<String, Boolean> files;
+
+    /**
+     * Total hits.
+     */
+    private final transient AtomicLong hit;
+
+    /**
+     * Total misses.
+     */
+    private final transient AtomicLong miss;
+
+    /**
+     * Total evictions from memory.
+     */
+    private final transient AtomicLong evicted;
+
+    /**
+     * Public ctor.
+     * @param engine Original engine
+     * @param entries Maximum number of pages to keep in memory
+     */
+    public Cache(final Engine engine, final int entries) {
+        this(engine, entries, "", 0);
+    }
+
+    /**
+     * Public ctor.
+     * @param engine Original engine
+     * @param entries Maximum number of pages to keep in memory
+     * @param path Directory to keep rendered pages in
+     */
+    public Cache(final Engine engine, final int entries, final File path) {
+        this(engine, entries, path, Cache.FILES);
+    }
+
+    /**
+     * Public ctor.
+     * @param engine Original engine
+     * @param entries Maximum number of pages to keep in memory
+     * @param path Directory to keep rendered pages in
+     * @param total Maximum number of pages to keep on disk
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    public Cache(final Engine engine, final int entries, final File path,
+        final int total) {
+        this(engine, entries, path.getAbsolutePath(), total);
+    }
+
+    /**
+     * Private ctor.
+     * @param engine Original engine
+     * @param entries Maximum number of pages to keep in memory
+     * @param path Directory to keep rendered pages in, or empty
+     * @param total Maximum number of pages to keep on disk
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    private Cache(final Engine engine, final int entries, final String path,
+        final int total) {
+        this.origin = engine;
+        this.dir = path;
+        this.hit = new AtomicLong();
+        this.miss = new AtomicLong();
+        this.evicted = new AtomicLong();
+        final AtomicLong evictions = this.evicted;
+        this.memory = Collections.synchronizedMap(
+            // @checkstyle MagicNumber (1 line)
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(
+                    final Map.Entry<String, String> eldest) {
+                    final boolean remove = this.size() > entries;
+                    if (remove) {
+                        evictions.incrementAndGet();
+                    }
+                    return remove;
+                }
+            }
+        );
+        this.files = Collections.synchronizedMap(
+            // @checkstyle MagicNumber (1 line)
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(
+                    final Map.Entry<String, Boolean> eldest) {
+                    final boolean remove = this.size() > total;
+                    if (remove) {
+                        FileUtils.deleteQuietly(
+                            new File(path, eldest.getKey())
+                        );
+                    }
+                    return remove;
+                }
+            }
+        );
+        this.load();
+    }
+
+    @Override
+    public String render(final Page page, final Options options)
+        throws IOException {
+        final String xml;
+        if (page instanceof Page.Text) {
+            xml = this.cached(page, options, this.key(page, options));
+        } else {
+            xml = this.origin.render(page, options);
+        }
+        return xml;
+    }
+
+    @Override
+    public InputStream stream(final Page page, final Options options)
+        throws IOException {
+        final InputStream input;
+        if (page instanceof Page.Text) {
+            input = IOUtils.toInputStream(
+                this.render(page, options), CharEncoding.UTF_8
+            );
+        } else {
+            input = this.origin.stream(page, options);
+        }
+        return input;
+    }
+
+    @Override
+    public Launch launch() {
+        return Launch.of(this.origin);
+    }
+
+    /**
+     * Total number of hits, in memory or on disk.
+     * @return Hits
+     */
+    public long hits() {
+        return this.hit.get();
+    }
+
+    /**
+     * Total number of misses.
+     * @return Misses
+     */
+    public long misses() {
+        return this.miss.get();
+    }
+
+    /**
+     * Total number of evictions from memory.
+     * @return Evictions
+     */
+    public long evictions() {
+        return this.evicted.get();
+    }
+
+    /**
+     * Find it in cache or render.
+     * @param page The page
+     * @param options Options of rendering
+     * @param key Its key
+     * @return XHTML
+     * @throws IOException If fails
+     */
+    private String cached(final Page page, final Options options,
+        final String key) throws IOException {
+        final File file = this.file(key);
+        String xml = this.memory.get(key);
+        if (xml == null) {
+            if (file != null) {
+                xml = Cache.read(file);
+            }
+            if (xml == null) {
+                this.miss.incrementAndGet();
+                xml = this.origin.render(page, options);
+                if (file != null) {
+                    Cache.save(file, xml);
+                    this.files.put(file.getName(), Boolean.TRUE);
+                }
+            } else {
+                this.hit.incrementAndGet();
+            }
+            this.memory.put(key, xml);
+        } else {
+            this.hit.incrementAndGet();
+        }
+        if (file != null) {
+            // moves the file to the end of the access order
+            this.files.get(file.getName());
+        }
+        return xml;
+    }
+
+    /**
+     * Key of the page.
+     * @param page The page
+     * @param options Options of rendering
+     * @return Hex digest
+     * @throws IOException If fails
+     */
+    private String key(final Page page, final Options options)
+        throws IOException {
+        final Binary binary = Binary.current();
+        final StringBuilder text = new StringBuilder(0)
+            .append(page.json()).append(' ').append(options.json())
+            .append(' ').append(Script.digest())
+            .append(' ').append(binary.path())
+            .append(' ').append(binary.version());
+        final Launch launch = Launch.of(this.origin);
+        if (launch != null) {
+            text.append(' ').append(launch.switches())
+                .append(' ').append(launch.settings());
+        }
+        return new Digest(text.toString().getBytes(CharEncoding.UTF_8)).hex();
+    }
+
+    /**
+     * Index the files already on disk, least recently used first,
+     * and delete the ones that don't fit.
+     */
+    private void load() {
+        if (!this.dir.isEmpty()) {
+            final File[] all = new File(this.dir).listFiles(
+                new FileFilter() {
+                    @Override
+                    public boolean accept(final File file) {
+                        return file.getName().endsWith(".xhtml");
+                    }
+                }
+            );
+            if (all != null) {
+                Arrays.sort(
+                    all,
+                    new Comparator<File>() {
+                        @Override
+                        public int compare(final File left,
+                            final File right) {
+                            return Long.valueOf(left.lastModified())
+                                .compareTo(right.lastModified());
+                        }
+                    }
+                );
+                for (final File file : all) {
+                    this.files.put(file.getName(), Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+    /**
+     * File on disk for the key.
+     * @param key The key
+     * @return File or NULL if there is no disk tier
+     */
+    private File file(final String key) {
+        final File file;
+        if (this.dir.isEmpty()) {
+            file = null;
+        } else {
+            file = new File(this.dir, String.format("%s.xhtml", key));
+        }
+        return file;
+    }
+
+    /**
+     * Read XHTML from file and mark it as used recently.
+     * @param file The file
+     * @return XHTML, or NULL if there is no file
+     * @throws IOException If fails
+     */
+    private static String read(final File file) throws IOException {
+        String xml = null;
+        if (file.exists()) {
+            try {
+                xml = FileUtils.readFileToString(file, CharEncoding.UTF_8);
+                file.setLastModified(System.currentTimeMillis());
+            } catch (final FileNotFoundException ex) {
+                xml = null;
+            }
+        }
+        return xml;
+    }
+
+    /**
+     * Save XHTML to file, atomically.
+     * @param file The file
+     * @param xml XHTML
+     * @throws IOException If fails
+     */
+    private static void save(final File file, final String xml)
+        throws IOException {
+        final File tmp = new File(
+            file.getParentFile(),
+            String.format("%s.%d.tmp", file.getName(), System.nanoTime())
+        );
+        FileUtils.write(tmp, xml, CharEncoding.UTF_8);
+        if (!tmp.renameTo(file)) {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+}
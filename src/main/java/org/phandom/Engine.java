@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Loggable;
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Rendering engine.
+ *
+ * <p>An engine takes a page, renders it in PhantomJS and returns
+ * the XHTML produced by {@code dom.js}. Use it together with
+ * {@link Phandom#dom(Engine)}, for example with a {@link Pool}:
+ *
+ * <pre>Pool pool = new Pool(4);
+ * try {
+ *   Document dom = new Phandom("&lt;p&gt;Hey!&lt;/p&gt;").dom(pool);
+ * } finally {
+ *   pool.close();
+ * }</pre>
+ *
+ * <p>Big pages are better read by {@link #stream(Page, Options)},
+ * which doesn't keep the entire XHTML on heap: it is buffered in memory
+ * only up to the limit set by {@code phandom.spill} system property
+ * (in bytes, 16Mb by default) and is kept in a temporary file above it.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public interface Engine {
+
+    /**
+     * Render the page.
+     * @param page The page to render
+     * @param options Options of rendering
+     * @return XHTML produced by PhantomJS
+     * @throws IOException If fails
+     */
+    String render(Page page, Options options) throws IOException;
+
+    /**
+     * Render the page and stream the result.
+     *
+     * <p>Engines with a {@link Listener} report the render when the
+     * stream is closed, in order to include its "parse" phase.
+     *
+     * @param page The page to render
+     * @param options Options of rendering
+     * @return XHTML produced by PhantomJS, the stream has to be closed
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    InputStream stream(Page page, Options options) throws IOException;
+
+    /**
+     * Default engine, which starts a new phantomjs process for every page.
+     */
+    @ToString
+    @EqualsAndHashCode(of = { "launch", "listener" })
+    @Loggable(Loggable.DEBUG)
+    final class Default implements Engine, Launch.Source {
+        /**
+         * Options of processes.
+         */
+        private final transient Launch launch;
+        /**
+         * Listener of renders.
+         */
+        private final transient Listener listener;
+        /**
+         * Public ctor.
+         */
+        public Default() {
+            this(new Listener.Silent());
+        }
+        /**
+         * Public ctor.
+         * @param lstnr Listener of renders
+         */
+        public Default(final Listener lstnr) {
+            this(new Launch(), lstnr);
+        }
+        /**
+         * Public ctor.
+         * @param lnch Options of processes
+         * @param lstnr Listener of renders
+         */
+        public Default(final Launch lnch, final Listener lstnr) {
+            this.launch = lnch;
+            this.listener = lstnr;
+        }
+        @Override
+        public String render(final Page page, final Options options)
+            throws IOException {
+            final InputStream input = this.stream(page, options);
+            try {
+                return IOUtils.toString(input, CharEncoding.UTF_8);
+            } finally {
+                input.close();
+            }
+        }
+        @Override
+        public InputStream stream(final Page page, final Options options)
+            throws IOException {
+            final Probe probe = new Probe();
+            final Spill spill = new Spill();
+            InputStream input = null;
+            try {
+                Phandom.phantom(page, options, this.launch).read(
+                    new Phantom.Reader<Long>() {
+                        @Override
+                        public Long read(final InputStream stdout)
+                            throws IOException {
+                            return IOUtils.copyLarge(stdout, spill);
+                        }
+                    },
+                    probe
+                );
+                input = probe.report(spill.input(), this.listener);
+            } finally {
+                if (input == null) {
+                    spill.close();
+                    probe.report(this.listener);
+                }
+            }
+            return input;
+        }
+        @Override
+        public Launch launch() {
+            return this.launch;
+        }
+    }
+
+}
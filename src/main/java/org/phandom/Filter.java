@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import java.util.regex.Pattern;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Filter of resources, requested by a page during rendering.
+ *
+ * <p>Filters are used in rules of {@link Options}, for example:
+ *
+ * <pre>Options options = new Options()
+ *   .allow(new Filter.Host("cdn.example.com"))
+ *   .deny(new Filter.Type("image"))
+ *   .deny(new Filter.Type("font"))
+ *   .deny(new Filter.Host("google-analytics.com"));</pre>
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@Immutable
+public interface Filter {
+
+    /**
+     * Describe it in JSON, for {@code dom.js}.
+     * @return JSON object
+     */
+    String json();
+
+    /**
+     * Resources of a type, recognized by the extension in their URLs:
+     * "image", "font", "stylesheet" or "script".
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "name")
+    @Loggable(Loggable.DEBUG)
+    final class Type implements Filter {
+        /**
+         * Known types.
+         */
+        private static final Pattern TYPES =
+            Pattern.compile("image|font|stylesheet|script");
+        /**
+         * Name of the type.
+         */
+        private final transient String name;
+        /**
+         * Public ctor.
+         * @param type Name of the type
+         */
+        public Type(final String type) {
+            if (!Filter.Type.TYPES.matcher(type).matches()) {
+                throw new IllegalArgumentException(
+                    String.format("unknown resource type \"%s\"", type)
+                );
+            }
+            this.name = type;
+        }
+        @Override
+        public String json() {
+            return String.format("{\"type\":%s}", new Json(this.name));
+        }
+    }
+
+    /**
+     * Resources from a host or any of its subdomains.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "name")
+    @Loggable(Loggable.DEBUG)
+    final class Host implements Filter {
+        /**
+         * Name of the host.
+         */
+        private final transient String name;
+        /**
+         * Public ctor.
+         * @param host Name of the host, e.g. "example.com"
+         */
+        public Host(final String host) {
+            this.name = host.toLowerCase();
+        }
+        @Override
+        public String json() {
+            return String.format("{\"host\":%s}", new Json(this.name));
+        }
+    }
+
+    /**
+     * Resources with URLs matching a regular expression.
+     *
+     * <p>The expression is evaluated by JavaScript, inside
+     * PhantomJS, so only the syntax common for Java and JavaScript
+     * is accepted, see {@link Regex}.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "regex")
+    @Loggable(Loggable.DEBUG)
+    final class Url implements Filter {
+        /**
+         * Regular expression.
+         */
+        private final transient String regex;
+        /**
+         * Public ctor.
+         * @param pattern Regular expression, e.g. "\\.mp4$"
+         */
+        public Url(final String pattern) {
+            this.regex = new Regex(pattern).portable();
+        }
+        @Override
+        public String json() {
+            return String.format("{\"url\":%s}", new Json(this.regex));
+        }
+    }
+
+}
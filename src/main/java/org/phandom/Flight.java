@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Loggable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Engine that renders concurrent identical requests only once.
+ *
+ * <p>The engine decorates another one. When a page is requested while
+ * the same page, with equal options, is being rendered by another
+ * thread, the request doesn't start a new render, but waits for the
+ * one in flight and gets its result, or its exception. Pages are equal
+ * when their sources are, see {@link Page}; the result is not kept
+ * after the render is over, use {@link Cache} for that:
+ *
+ * <pre>Flight flight = new Flight(new Pool(4));
+ * Document dom = new Phandom(uri).dom(flight);
+ * Logger.info(this, "%d renders saved", flight.saved());</pre>
+ *
+ * <p>The result of a shared render is kept in a {@link Spill}, which
+ * moves it to a temporary file when it is big, and every thread reads
+ * it with its own stream; it is deleted when all of them are closed.
+ * When the original engine buffers its result in a spill anyway, like
+ * {@link Engine.Default} and {@link Pool} do, that spill is shared,
+ * without a copy.
+ * A thread that joined a failed render gets its own exception, with
+ * its own stack trace, caused by the original one.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString(of = "origin")
+@Loggable(Loggable.DEBUG)
+public final class Flight implements Engine, Launch.Source {
+
+    /**
+     * Original engine.
+     */
+    private final transient Engine origin;
+
+    /**
+     * Renders in flight, by pages and options.
+     */
+    private final transient ConcurrentMap<List<Object>, Flight.Shared>
+        flights;
+
+    /**
+     * Total renders started.
+     */
+    private final transient AtomicLong started;
+
+    /**
+     * Total requests that joined a render in flight.
+     */
+    private final transient AtomicLong joined;
+
+    /**
+     * Public ctor.
+     * @param engine Original engine
+     */
+    public Flight(final Engine engine) {
+        this.origin = engine;
+        this.flights =
+            new ConcurrentHashMap<List<Object>, Flight.Shared>(0);
+        this.started = new AtomicLong();
+        this.joined = new AtomicLong();
+    }
+
+    @Override
+    public String render(final Page page, final Options options)
+        throws IOException {
+        final InputStream input = this.stream(page, options);
+        try {
+            return IOUtils.toString(input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public InputStream stream(final Page page, final Options options)
+        throws IOException {
+        final List<Object> key = Arrays.<Object>asList(page, options);
+        InputStream input = null;
+        while (input == null) {
+            final Flight.Shared shared =
+                new Flight.Shared(this.origin, page, options);
+            final Flight.Shared flight = this.flights.putIfAbsent(key, shared);
+            if (flight == null) {
+                this.started.incrementAndGet();
+                try {
+                    shared.run();
+                } finally {
+                    this.flights.remove(key, shared);
+                }
+                input = shared.input(true);
+            } else if (flight.join()) {
+                this.joined.incrementAndGet();
+                input = flight.input(false);
+            }
+        }
+        return input;
+    }
+
+    @Override
+    public Launch launch() {
+        return Launch.of(this.origin);
+    }
+
+    /**
+     * Total number of renders started by the original engine.
+     * @return Renders
+     */
+    public long renders() {
+        return this.started.get();
+    }
+
+    /**
+     * Total number of renders saved, by requests that joined
+     * a render in flight.
+     * @return Saved renders
+     */
+    public long saved() {
+        return this.joined.get();
+    }
+
+    /**
+     * Render shared by threads, which are reading its result.
+     */
+    private static final class Shared {
+        /**
+         * The render.
+         */
+        private final transient FutureTask<Spill> task;
+        /**
+         * Its result, when it is ready.
+         */
+        private final transient AtomicReference<Spill> output;
+        /**
+         * Threads that still need the result, including the one
+         * that renders.
+         */
+        private transient int readers;
+        /**
+         * Ctor.
+         * @param engine Engine to render with
+         * @param page The page
+         * @param options Options of rendering
+         */
+        Shared(final Engine engine, final Page page, final Options options) {
+            final AtomicReference<Spill> ready = new AtomicReference<Spill>();
+            this.task = new FutureTask<Spill>(
+                new Callable<Spill>() {
+                    @Override
+                    public Spill call() throws IOException {
+                        ready.set(
+                            Flight.Shared.spill(engine.stream(page, options))
+                        );
+                        return ready.get();
+                    }
+                }
+            );
+            this.output = ready;
+            this.readers = 1;
+        }
+        /**
+         * Render, in the current thread.
+         */
+        public void run() {
+            this.task.run();
+        }
+        /**
+         * Join the render, if its result is still available.
+         * @return TRUE if joined
+         */
+        public boolean join() {
+            synchronized (this.task) {
+                final boolean alive = this.readers > 0;
+                if (alive) {
+                    ++this.readers;
+                }
+                return alive;
+            }
+        }
+        /**
+         * Wait for the result and read it.
+         * @param own TRUE if the render happened in the current thread
+         * @return Stream, which has to be closed
+         * @throws IOException If the render fails
+         */
+        public InputStream input(final boolean own) throws IOException {
+            boolean done = false;
+            try {
+                final InputStream input =
+                    new Flight.Reader(this.result(own).share(), this);
+                done = true;
+                return input;
+            } finally {
+                if (!done) {
+                    this.leave();
+                }
+            }
+        }
+        /**
+         * The thread doesn't need the result any more.
+         *
+         * <p>The last one leaves after the render is over, since
+         * the thread that renders is one of them.
+         */
+        public void leave() {
+            synchronized (this.task) {
+                --this.readers;
+                if (this.readers == 0 && this.output.get() != null) {
+                    this.output.get().close();
+                }
+            }
+        }
+        /**
+         * Wait for the result of the render.
+         * @param own TRUE if the render happened in the current thread
+         * @return The result
+         * @throws IOException If the render fails
+         */
+        private Spill result(final boolean own) throws IOException {
+            try {
+                return this.task.get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            } catch (final ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                if (own && cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (own && cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Timeout) {
+                    throw new Timeout((Timeout) cause);
+                }
+                if (cause instanceof RuntimeException) {
+                    throw new IllegalStateException(cause.getMessage(), cause);
+                }
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+        /**
+         * Take the spill of the rendered XHTML, or copy it into
+         * a new one, if the stream doesn't have it.
+         * @param xhtml The XHTML
+         * @return Spill with it
+         * @throws IOException If fails
+         */
+        private static Spill spill(final InputStream xhtml)
+            throws IOException {
+            Spill spill = Spill.detach(xhtml);
+            boolean done = false;
+            try {
+                if (spill == null) {
+                    spill = new Spill();
+                    IOUtils.copyLarge(xhtml, spill);
+                    spill.flush();
+                }
+                xhtml.close();
+                done = true;
+            } finally {
+                if (!done) {
+                    IOUtils.closeQuietly(xhtml);
+                    if (spill != null) {
+                        spill.close();
+                    }
+                }
+            }
+            return spill;
+        }
+    }
+
+    /**
+     * Stream of a shared result, which leaves the render when closed.
+     */
+    private static final class Reader extends FilterInputStream {
+        /**
+         * The render.
+         */
+        private final transient Flight.Shared shared;
+        /**
+         * Is it still open?
+         */
+        private final transient AtomicBoolean open;
+        /**
+         * Ctor.
+         * @param input Stream to read
+         * @param flight The render
+         */
+        Reader(final InputStream input, final Flight.Shared flight) {
+            super(input);
+            this.shared = flight;
+            this.open = new AtomicBoolean(true);
+        }
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (this.open.compareAndSet(true, false)) {
+                    this.shared.leave();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory histograms of renders.
+ *
+ * <p>Every phase of a {@link Report} becomes a metric with the same
+ * name, in milliseconds; sizes of XHTML go to "bytes", numbers of
+ * resources to "loaded" and "blocked", and lengths of pool queue
+ * to "queued". Values are counted in buckets of powers of two, so
+ * percentiles are approximate: they are upper bounds of buckets,
+ * never bigger than the maximum:
+ *
+ * <pre>Histogram histogram = new Histogram();
+ * Document dom = new Phandom(html).dom(new Engine.Default(histogram));
+ * long p95 = histogram.percentile("total", 0.95d);</pre>
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class Histogram implements Listener {
+
+    /**
+     * Position of count in the array of a metric.
+     */
+    private static final int COUNT = 0;
+
+    /**
+     * Position of sum in the array of a metric.
+     */
+    private static final int SUM = 1;
+
+    /**
+     * Position of maximum in the array of a metric.
+     */
+    private static final int MAX = 2;
+
+    /**
+     * Position of the first bucket in the array of a metric.
+     */
+    private static final int FIRST = 3;
+
+    /**
+     * Total number of buckets.
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * Metrics, each one is count, sum, max and buckets.
+     */
+    private final transient ConcurrentMap<String, AtomicLongArray> all;
+
+    /**
+     * Status codes and their counts.
+     */
+    private final transient ConcurrentMap<Integer, AtomicLong> codes;
+
+    /**
+     * Public ctor.
+     */
+    public Histogram() {
+        this.all = new ConcurrentHashMap<String, AtomicLongArray>(0);
+        this.codes = new ConcurrentHashMap<Integer, AtomicLong>(0);
+    }
+
+    @Override
+    public void rendered(final Report report) {
+        for (final String phase : report.phases()) {
+            this.add(phase, report.msec(phase));
+        }
+        this.add("bytes", report.bytes());
+        this.add("loaded", report.loaded());
+        this.add("blocked", report.blocked());
+        if (report.queued() >= 0L) {
+            this.add("queued", report.queued());
+        }
+        AtomicLong counter = this.codes.get(report.code());
+        if (counter == null) {
+            this.codes.putIfAbsent(report.code(), new AtomicLong());
+            counter = this.codes.get(report.code());
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Names of all metrics seen so far.
+     * @return Names, sorted
+     */
+    public Collection<String> metrics() {
+        return new TreeMap<String, AtomicLongArray>(this.all).keySet();
+    }
+
+    /**
+     * How many values of the metric were seen.
+     * @param metric Name of the metric, e.g. "load"
+     * @return Total number of them
+     */
+    public long count(final String metric) {
+        return this.value(metric, Histogram.COUNT);
+    }
+
+    /**
+     * Sum of all values of the metric.
+     * @param metric Name of the metric
+     * @return Sum
+     */
+    public long sum(final String metric) {
+        return this.value(metric, Histogram.SUM);
+    }
+
+    /**
+     * Maximum value of the metric.
+     * @param metric Name of the metric
+     * @return Maximum
+     */
+    public long max(final String metric) {
+        return this.value(metric, Histogram.MAX);
+    }
+
+    /**
+     * Approximate percentile of the metric.
+     * @param metric Name of the metric
+     * @param fraction Fraction between 0 and 1, e.g. 0.99 for 99th
+     * @return Value, or zero if nothing was seen yet
+     */
+    public long percentile(final String metric, final double fraction) {
+        if (fraction < 0.0d || fraction > 1.0d) {
+            throw new IllegalArgumentException(
+                "fraction must be between 0 and 1"
+            );
+        }
+        final AtomicLongArray array = this.all.get(metric);
+        long result = 0L;
+        if (array != null) {
+            final long need = (long) Math.ceil(
+                array.get(Histogram.COUNT) * fraction
+            );
+            long seen = 0L;
+            for (int idx = 0; idx < Histogram.BUCKETS; ++idx) {
+                seen += array.get(Histogram.FIRST + idx);
+                if (seen >= need) {
+                    result = Math.min(
+                        Histogram.upper(idx), array.get(Histogram.MAX)
+                    );
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * How many renders finished with this status code.
+     * @param code Status code, see {@link Report#code()}
+     * @return Total number of them
+     */
+    public long exits(final int code) {
+        final AtomicLong counter = this.codes.get(code);
+        final long result;
+        if (counter == null) {
+            result = 0L;
+        } else {
+            result = counter.get();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder(0);
+        for (final String metric : this.metrics()) {
+            if (text.length() > 0) {
+                text.append("; ");
+            }
+            text.append(
+                String.format(
+                    "%s: n=%d p50=%d p99=%d max=%d",
+                    metric, this.count(metric),
+                    // @checkstyle MagicNumber (2 lines)
+                    this.percentile(metric, 0.5d),
+                    this.percentile(metric, 0.99d),
+                    this.max(metric)
+                )
+            );
+        }
+        for (final Map.Entry<Integer, AtomicLong> code
+            : new TreeMap<Integer, AtomicLong>(this.codes).entrySet()) {
+            text.append(
+                String.format(
+                    "; code %d: %d", code.getKey(), code.getValue().get()
+                )
+            );
+        }
+        return text.toString();
+    }
+
+    /**
+     * Add a value to the metric.
+     * @param metric Name of the metric
+     * @param value The value, not negative
+     */
+    private void add(final String metric, final long value) {
+        AtomicLongArray array = this.all.get(metric);
+        if (array == null) {
+            this.all.putIfAbsent(
+                metric,
+                new AtomicLongArray(Histogram.FIRST + Histogram.BUCKETS)
+            );
+            array = this.all.get(metric);
+        }
+        final long positive = Math.max(value, 0L);
+        array.incrementAndGet(Histogram.COUNT);
+        array.addAndGet(Histogram.SUM, positive);
+        while (true) {
+            final long max = array.get(Histogram.MAX);
+            if (positive <= max
+                || array.compareAndSet(Histogram.MAX, max, positive)) {
+                break;
+            }
+        }
+        array.incrementAndGet(
+            Histogram.FIRST + Histogram.BUCKETS
+                - Long.numberOfLeadingZeros(positive)
+        );
+    }
+
+    /**
+     * Get one value of the metric.
+     * @param metric Name of the metric
+     * @param pos Position in the array
+     * @return Value, or zero if the metric is not seen yet
+     */
+    private long value(final String metric, final int pos) {
+        final AtomicLongArray array = this.all.get(metric);
+        final long result;
+        if (array == null) {
+            result = 0L;
+        } else {
+            result = array.get(pos);
+        }
+        return result;
+    }
+
+    /**
+     * Upper bound of the bucket.
+     * @param bucket Number of the bucket
+     * @return Maximum value, which gets into it
+     */
+    private static long upper(final int bucket) {
+        final long result;
+        if (bucket >= Histogram.BUCKETS - 1) {
+            result = Long.MAX_VALUE;
+        } else {
+            result = (1L << bucket) - 1L;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Loggable;
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Engine that converts static markup in the JVM, without PhantomJS.
+ *
+ * <p>The engine decorates another one. A text page without scripts
+ * and event handlers, rendered with options that don't need a browser
+ * (no filters, no waiting, no query), is converted to XHTML right in
+ * the JVM, see {@link Markup}, which is many times faster than starting
+ * a process. The result is meant to be the same as PhantomJS would
+ * produce, but it is not checked against it; anything the conversion
+ * is not sure about goes to the original engine, like all other pages:
+ *
+ * <pre>Engine engine = new Inline(new Engine.Default());
+ * Document dom = new Phandom(html).dom(engine);</pre>
+ *
+ * <p>Pages converted in the JVM are not reported to a {@link Listener}
+ * of the original engine, since there is no render to report.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString
+@EqualsAndHashCode(of = "origin")
+@Loggable(Loggable.DEBUG)
+public final class Inline implements Engine, Launch.Source {
+
+    /**
+     * Original engine.
+     */
+    private final transient Engine origin;
+
+    /**
+     * Public ctor.
+     * @param engine Original engine, for pages that need PhantomJS
+     */
+    public Inline(final Engine engine) {
+        this.origin = engine;
+    }
+
+    @Override
+    public String render(final Page page, final Options options)
+        throws IOException {
+        String xhtml = Inline.convert(page, options);
+        if (xhtml.isEmpty()) {
+            xhtml = this.origin.render(page, options);
+        }
+        return xhtml;
+    }
+
+    @Override
+    public InputStream stream(final Page page, final Options options)
+        throws IOException {
+        final String xhtml = Inline.convert(page, options);
+        final InputStream input;
+        if (xhtml.isEmpty()) {
+            input = this.origin.stream(page, options);
+        } else {
+            input = IOUtils.toInputStream(xhtml, CharEncoding.UTF_8);
+        }
+        return input;
+    }
+
+    @Override
+    public Launch launch() {
+        return Launch.of(this.origin);
+    }
+
+    /**
+     * Convert the page to XHTML in the JVM, if it is static markup.
+     * @param page The page
+     * @param options Options of rendering
+     * @return XHTML, or empty if it has to be rendered by PhantomJS
+     */
+    private static String convert(final Page page, final Options options) {
+        String xhtml = "";
+        if (page instanceof Page.Text && options.plain()) {
+            xhtml = new Markup(Page.Text.class.cast(page).html()).xhtml();
+        }
+        return xhtml;
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+/**
+ * JSON string literal.
+ *
+ * <p>All characters outside of printable ASCII are escaped, so that
+ * the literal can be sent to {@code dom.js} in any encoding and
+ * always stays on one line.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Json {
+
+    /**
+     * Hex digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The text.
+     */
+    private final transient String text;
+
+    /**
+     * Ctor.
+     * @param txt The text to quote
+     */
+    Json(final String txt) {
+        this.text = txt;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder out = new StringBuilder(this.text.length() + 2);
+        out.append('"');
+        final int len = this.text.length();
+        for (int pos = 0; pos < len; ++pos) {
+            final char chr = this.text.charAt(pos);
+            if (chr == '"' || chr == '\\') {
+                out.append('\\').append(chr);
+            // @checkstyle MagicNumber (1 line)
+            } else if (chr < 0x20 || chr > 0x7e) {
+                out.append("\\u")
+                    // @checkstyle MagicNumber (4 lines)
+                    .append(Json.HEX[chr >> 12 & 0xf])
+                    .append(Json.HEX[chr >> 8 & 0xf])
+                    .append(Json.HEX[chr >> 4 & 0xf])
+                    .append(Json.HEX[chr & 0xf]);
+            } else {
+                out.append(chr);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.jcabi.log.Logger;
+import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Options of PhantomJS processes.
+ *
+ * <p>They are command line switches of {@code phantomjs} and settings
+ * of every page it opens. For example, all network requests may be sent
+ * through an HTTP proxy, like a caching {@link Relay}, see
+ * {@link #proxy(String)}. The object is immutable, every method that
+ * changes an option returns a new object:
+ *
+ * <pre>Launch launch = new Launch()
+ *   .images(false)
+ *   .cache(new File("/var/cache/phandom"), 100L &lt;&lt; 20)
+ *   .viewport(1280, 1024);
+ * Document dom = new Phandom(uri).with(launch).dom();
+ * Pool pool = new Pool(4, 100, new Listener.Silent(), launch);</pre>
+ *
+ * <p>Processes started with the same disk cache directory share it,
+ * which means that a resource downloaded by one of them is taken from
+ * the cache by the others, even after a JVM restart. Switches are
+ * applied when a process starts, that's why an {@link Engine} gets
+ * them in its constructor, while {@link Phandom#with(Launch)} affects
+ * only the processes that {@link Phandom} starts itself.
+ *
+ * <p>PhantomJS 1.x has no switch for the path of the disk cache;
+ * with it, {@link #cache(File, long)} turns the cache on in its
+ * default location and logs a warning, only once per JVM.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode
+@Loggable(Loggable.DEBUG)
+public final class Launch {
+
+    /**
+     * Was the warning about the path of disk cache logged already?
+     */
+    private static final AtomicBoolean WARNED = new AtomicBoolean();
+
+    /**
+     * Load images?
+     */
+    private final transient boolean pictures;
+
+    /**
+     * Directory of the disk cache, or empty if it is off.
+     */
+    private final transient String dir;
+
+    /**
+     * Maximum size of the disk cache, in bytes, or zero for default.
+     */
+    private final transient long bytes;
+
+    /**
+     * Ignore SSL errors?
+     */
+    private final transient boolean unsafe;
+
+    /**
+     * Directory of local storage, or empty for default.
+     */
+    private final transient String local;
+
+    /**
+     * User agent, or empty for default.
+     */
+    private final transient String agnt;
+
+    /**
+     * Width and height of the viewport, or zeros for default.
+     */
+    private final transient String port;
+
+    /**
+     * HTTP proxy, "host:port", or empty if none.
+     */
+    private final transient String via;
+
+    /**
+     * Public ctor.
+     */
+    public Launch() {
+        this(true, "", 0L, false, "", "", "", "");
+    }
+
+    /**
+     * Private ctor.
+     * @param load Load images?
+     * @param cache Directory of the disk cache, or empty
+     * @param max Maximum size of the disk cache, or zero
+     * @param insecure Ignore SSL errors?
+     * @param storage Directory of local storage, or empty
+     * @param agent User agent, or empty
+     * @param viewport Viewport as JSON object, or empty
+     * @param proxy HTTP proxy, or empty
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    private Launch(final boolean load, final String cache, final long max,
+        final boolean insecure, final String storage, final String agent,
+        final String viewport, final String proxy) {
+        this.pictures = load;
+        this.dir = cache;
+        this.bytes = max;
+        this.unsafe = insecure;
+        this.local = storage;
+        this.agnt = agent;
+        this.port = viewport;
+        this.via = proxy;
+    }
+
+    /**
+     * Load images or not (they are loaded by default).
+     * @param load TRUE to load them
+     * @return New launch
+     */
+    public Launch images(final boolean load) {
+        return new Launch(
+            load, this.dir, this.bytes, this.unsafe, this.local,
+            this.agnt, this.port, this.via
+        );
+    }
+
+    /**
+     * With disk cache in this directory, of the default size.
+     * @param cache The directory
+     * @return New launch
+     */
+    public Launch cache(final File cache) {
+        return this.cache(cache, 0L);
+    }
+
+    /**
+     * With disk cache in this directory, of this maximum size.
+     * @param cache The directory
+     * @param max Maximum size in bytes, zero means default
+     * @return New launch
+     */
+    public Launch cache(final File cache, final long max) {
+        if (max < 0L) {
+            throw new IllegalArgumentException(
+                "size of disk cache can't be negative"
+            );
+        }
+        return new Launch(
+            this.pictures, cache.getAbsolutePath(), max, this.unsafe,
+            this.local, this.agnt, this.port, this.via
+        );
+    }
+
+    /**
+     * Ignore SSL errors or not (they are not ignored by default), for
+     * example to render pages of internal hosts with self-signed
+     * certificates.
+     * @param insecure TRUE to ignore them
+     * @return New launch
+     */
+    public Launch insecure(final boolean insecure) {
+        return new Launch(
+            this.pictures, this.dir, this.bytes, insecure, this.local,
+            this.agnt, this.port, this.via
+        );
+    }
+
+    /**
+     * With local storage of pages in this directory.
+     * @param storage The directory
+     * @return New launch
+     */
+    public Launch storage(final File storage) {
+        return new Launch(
+            this.pictures, this.dir, this.bytes, this.unsafe,
+            storage.getAbsolutePath(), this.agnt, this.port, this.via
+        );
+    }
+
+    /**
+     * With this user agent, empty string means the default one.
+     * @param agent User agent
+     * @return New launch
+     */
+    public Launch agent(final String agent) {
+        return new Launch(
+            this.pictures, this.dir, this.bytes, this.unsafe, this.local,
+            agent, this.port, this.via
+        );
+    }
+
+    /**
+     * With viewport of this size, in pixels.
+     * @param width Width
+     * @param height Height
+     * @return New launch
+     */
+    public Launch viewport(final int width, final int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException(
+                "size of viewport must be positive"
+            );
+        }
+        return new Launch(
+            this.pictures, this.dir, this.bytes, this.unsafe, this.local,
+            this.agnt,
+            String.format("{\"width\":%d,\"height\":%d}", width, height),
+            this.via
+        );
+    }
+
+    /**
+     * With this HTTP proxy for all network requests, empty string means
+     * no proxy.
+     * @param address Host and port, e.g. "127.0.0.1:8080"
+     * @return New launch
+     * @see Relay#address()
+     */
+    public Launch proxy(final String address) {
+        if (!address.isEmpty() && !address.matches("[^:\\s]+:\\d+")) {
+            throw new IllegalArgumentException(
+                String.format("invalid proxy address \"%s\"", address)
+            );
+        }
+        return new Launch(
+            this.pictures, this.dir, this.bytes, this.unsafe, this.local,
+            this.agnt, this.port, address
+        );
+    }
+
+    /**
+     * Command line switches of phantomjs.
+     * @return Switches, to go before the script
+     */
+    List<String> switches() {
+        final List<String> args = new LinkedList<String>();
+        if (!this.pictures) {
+            args.add("--load-images=false");
+        }
+        if (!this.dir.isEmpty()) {
+            args.add("--disk-cache=true");
+            // @checkstyle MagicNumber (1 line)
+            if (Binary.current().supports(2, 0)) {
+                args.add(String.format("--disk-cache-path=%s", this.dir));
+            } else if (Launch.WARNED.compareAndSet(false, true)) {
+                Logger.warn(
+                    this,
+                    "phantomjs 2.0+ is required to keep disk cache in %s",
+                    this.dir
+                );
+            }
+            if (this.bytes > 0L) {
+                args.add(
+                    String.format(
+                        "--max-disk-cache-size=%d",
+                        // @checkstyle MagicNumber (1 line)
+                        Math.max(this.bytes >> 10, 1L)
+                    )
+                );
+            }
+        }
+        if (this.unsafe) {
+            args.add("--ignore-ssl-errors=true");
+        }
+        if (!this.local.isEmpty()) {
+            args.add(String.format("--local-storage-path=%s", this.local));
+        }
+        if (!this.via.isEmpty()) {
+            args.add(String.format("--proxy=%s", this.via));
+            args.add("--proxy-type=http");
+        }
+        return args;
+    }
+
+    /**
+     * Settings of pages, for {@code dom.js}.
+     * @return JSON object
+     */
+    String settings() {
+        final StringBuilder json = new StringBuilder("{\"settings\":{");
+        if (!this.agnt.isEmpty()) {
+            json.append("\"userAgent\":").append(new Json(this.agnt));
+        }
+        json.append('}');
+        if (!this.port.isEmpty()) {
+            json.append(",\"viewport\":").append(this.port);
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Options of the processes that the engine starts.
+     * @param engine The engine
+     * @return Launch, or NULL if they are not known
+     */
+    static Launch of(final Engine engine) {
+        Launch launch = null;
+        if (engine instanceof Launch.Source) {
+            launch = Launch.Source.class.cast(engine).launch();
+        }
+        return launch;
+    }
+
+    /**
+     * Engine, which starts its processes with a launch.
+     */
+    interface Source {
+        /**
+         * Options of its processes.
+         * @return Launch, or NULL if they are not known
+         */
+        Launch launch();
+    }
+
+}
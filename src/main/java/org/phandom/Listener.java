@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+/**
+ * Listener of renders, for instrumentation.
+ *
+ * <p>Engines report every render to their listener, successful
+ * or not, right after it is finished, or when the stream from
+ * {@link Engine#stream(Page, Options)} is closed, for example:
+ *
+ * <pre>Histogram histogram = new Histogram();
+ * Pool pool = new Pool(4, 100, histogram);
+ * Document dom = new Phandom(html).dom(pool);
+ * long p99 = histogram.percentile("load", 0.99d);</pre>
+ *
+ * <p>Implementations must be thread-safe and fast, since they are
+ * called in the threads that render. Runtime exceptions thrown by
+ * them are logged and ignored.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ * @see Engine.Default#Default(Listener)
+ * @see Pool#Pool(int, int, Listener)
+ */
+public interface Listener {
+
+    /**
+     * Page was rendered.
+     * @param report Report about the render
+     */
+    void rendered(Report report);
+
+    /**
+     * Listener that ignores everything, this is the default.
+     */
+    final class Silent implements Listener {
+        @Override
+        public void rendered(final Report report) {
+            // nothing to do
+        }
+    }
+
+}
@@ -0,0 +1,542 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.log.Logger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * HTML of a script-free page, converted to XHTML without PhantomJS.
+ *
+ * <p>Static markup, with no scripts and no event handlers, becomes in
+ * WebKit the DOM that its HTML5 parser builds, and nothing else. For
+ * such markup the class produces the same XHTML as {@code dom.js},
+ * using {@link Tree} for tree construction, which is many times faster
+ * than starting a browser. Anything it is not sure about (scripts,
+ * {@code on*} attributes, frames, forms controls, SVG and MathML,
+ * misnested tags, references to entities it doesn't know, doctypes
+ * other than HTML5, etc.) makes {@link #xhtml()} return an empty
+ * string, which means that the page has to be rendered by PhantomJS.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Markup {
+
+    /**
+     * Names of elements.
+     */
+    private static final Pattern ELEMENT = Pattern.compile("[a-z][a-z0-9-]*");
+
+    /**
+     * Names of attributes.
+     */
+    private static final Pattern ATTRIBUTE =
+        Pattern.compile("[a-z_:][a-z0-9_:.-]*");
+
+    /**
+     * Characters not allowed in unquoted values of attributes.
+     */
+    private static final Pattern UNQUOTED = Pattern.compile("[\"'<=`]");
+
+    /**
+     * Named character references we know.
+     */
+    private static final Map<String, String> ENTITIES =
+        new HashMap<String, String>(0);
+
+    static {
+        final String[][] pairs = {
+            {"amp", "&"}, {"lt", "<"}, {"gt", ">"}, {"quot", "\""},
+            {"apos", "'"}, {"nbsp", "\u00a0"}, {"copy", "\u00a9"},
+            {"reg", "\u00ae"}, {"trade", "\u2122"}, {"euro", "\u20ac"},
+            {"hellip", "\u2026"}, {"mdash", "\u2014"}, {"ndash", "\u2013"},
+            {"laquo", "\u00ab"}, {"raquo", "\u00bb"}, {"lsquo", "\u2018"},
+            {"rsquo", "\u2019"}, {"ldquo", "\u201c"}, {"rdquo", "\u201d"},
+            {"sbquo", "\u201a"}, {"bdquo", "\u201e"}, {"bull", "\u2022"},
+            {"middot", "\u00b7"}, {"times", "\u00d7"}, {"divide", "\u00f7"},
+            {"deg", "\u00b0"}, {"plusmn", "\u00b1"}, {"sect", "\u00a7"},
+            {"para", "\u00b6"}, {"cent", "\u00a2"}, {"pound", "\u00a3"},
+            {"yen", "\u00a5"}, {"shy", "\u00ad"}, {"larr", "\u2190"},
+            {"rarr", "\u2192"}, {"uarr", "\u2191"}, {"darr", "\u2193"},
+        };
+        for (final String[] pair : pairs) {
+            Markup.ENTITIES.put(pair[0], pair[1]);
+        }
+    }
+
+    /**
+     * HTML.
+     */
+    private final transient String html;
+
+    /**
+     * Ctor.
+     * @param src HTML
+     */
+    Markup(final String src) {
+        this.html = src;
+    }
+
+    /**
+     * Convert it to XHTML, the way PhantomJS and {@code dom.js} do.
+     * @return XHTML, or empty if it has to be rendered by PhantomJS
+     */
+    public String xhtml() {
+        String xhtml;
+        try {
+            final Tree tree = new Tree();
+            new Markup.Lexer(this.html, tree).run();
+            xhtml = tree.xhtml();
+        } catch (final Markup.Unsupported ex) {
+            Logger.debug(this, "%s, rendering in PhantomJS", ex.getMessage());
+            xhtml = "";
+        }
+        return xhtml;
+    }
+
+    /**
+     * Is it an HTML whitespace?
+     * @param chr The character
+     * @return TRUE if it is
+     */
+    static boolean space(final char chr) {
+        return chr == ' ' || chr == '\n' || chr == '\t' || chr == '\f';
+    }
+
+    /**
+     * Markup we don't convert.
+     */
+    static final class Unsupported extends Exception {
+        /**
+         * Serialization marker.
+         */
+        private static final long serialVersionUID = 0x7a3c9e21b5d4f608L;
+        /**
+         * Ctor.
+         * @param cause What is not supported
+         */
+        Unsupported(final String cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Tokenizer, which sends tokens to the tree.
+     */
+    private static final class Lexer {
+        /**
+         * HTML, with line breaks normalized.
+         */
+        private final transient String src;
+        /**
+         * The tree.
+         */
+        private final transient Tree tree;
+        /**
+         * Current position.
+         */
+        private transient int pos;
+        /**
+         * Ctor.
+         * @param html HTML
+         * @param target The tree to build
+         */
+        Lexer(final String html, final Tree target) {
+            this.src = html.replace("\r\n", "\n").replace('\r', '\n');
+            this.tree = target;
+        }
+        /**
+         * Read all tokens.
+         * @throws Markup.Unsupported If something is not supported
+         */
+        public void run() throws Markup.Unsupported {
+            if (this.src.indexOf('\u0000') >= 0) {
+                throw new Markup.Unsupported("NUL character");
+            }
+            while (this.pos < this.src.length()) {
+                if (this.tag()) {
+                    this.markup();
+                } else {
+                    this.data();
+                }
+            }
+        }
+        /**
+         * Does markup start at the current position?
+         * @return TRUE if it does
+         */
+        private boolean tag() {
+            boolean tag = false;
+            if (this.src.charAt(this.pos) == '<'
+                && this.pos + 1 < this.src.length()) {
+                final char next = this.src.charAt(this.pos + 1);
+                tag = next == '/' || next == '!' || next == '?'
+                    || Markup.Lexer.letter(next);
+            }
+            return tag;
+        }
+        /**
+         * Read text.
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private void data() throws Markup.Unsupported {
+            final int start = this.pos;
+            ++this.pos;
+            while (this.pos < this.src.length() && !this.tag()) {
+                ++this.pos;
+            }
+            this.tree.text(
+                Markup.Lexer.decode(this.src.substring(start, this.pos), false)
+            );
+        }
+        /**
+         * Read a tag, a comment, or a doctype.
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private void markup() throws Markup.Unsupported {
+            final char next = this.src.charAt(this.pos + 1);
+            if (this.src.startsWith("<!--", this.pos)) {
+                this.comment();
+            } else if (this.src.regionMatches(
+                true, this.pos, "<!doctype", 0, "<!doctype".length()
+            )) {
+                final int end = this.src.indexOf('>', this.pos);
+                if (end < 0) {
+                    throw new Markup.Unsupported("unclosed doctype");
+                }
+                this.tree.doctype(
+                    this.src.substring(this.pos + "<!doctype".length(), end)
+                );
+                this.pos = end + 1;
+            } else if (next == '/') {
+                this.pos += 2;
+                this.tree.end(this.closing());
+            } else if (next == '!' || next == '?') {
+                throw new Markup.Unsupported("bogus comment");
+            } else {
+                this.opening();
+            }
+        }
+        /**
+         * Read a comment.
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private void comment() throws Markup.Unsupported {
+            final int start = this.pos + "<!--".length();
+            final int end = this.src.indexOf("-->", start);
+            if (end < 0 || this.src.startsWith(">", start)
+                || this.src.startsWith("->", start)
+                || this.src.substring(start, end).contains("--!>")) {
+                throw new Markup.Unsupported("broken comment");
+            }
+            this.tree.comment(this.src.substring(start, end));
+            this.pos = end + "-->".length();
+        }
+        /**
+         * Read an end tag, starting right after {@code </}.
+         * @return Name of the element
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private String closing() throws Markup.Unsupported {
+            final String name = this.name(Markup.ELEMENT);
+            this.skip();
+            if (this.pos >= this.src.length()
+                || this.src.charAt(this.pos) != '>') {
+                throw new Markup.Unsupported(
+                    String.format("broken </%s>", name)
+                );
+            }
+            ++this.pos;
+            return name;
+        }
+        /**
+         * Read a start tag and, for {@code title} and {@code style},
+         * everything up to its end tag.
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private void opening() throws Markup.Unsupported {
+            ++this.pos;
+            final String name = this.name(Markup.ELEMENT);
+            final List<String[]> attrs = new ArrayList<String[]>(0);
+            while (true) {
+                this.skip();
+                if (this.pos >= this.src.length()) {
+                    throw new Markup.Unsupported(
+                        String.format("unclosed <%s>", name)
+                    );
+                }
+                final char chr = this.src.charAt(this.pos);
+                if (chr == '>') {
+                    ++this.pos;
+                    break;
+                }
+                if (chr == '/') {
+                    ++this.pos;
+                    continue;
+                }
+                final String attr = this.name(Markup.ATTRIBUTE);
+                final String value = this.value();
+                boolean seen = false;
+                for (final String[] prev : attrs) {
+                    seen |= prev[0].equals(attr);
+                }
+                if (!seen) {
+                    attrs.add(new String[] {attr, value});
+                }
+            }
+            String raw = null;
+            if ("title".equals(name) || "style".equals(name)) {
+                raw = this.raw(name);
+            }
+            this.tree.start(name, attrs, raw);
+        }
+        /**
+         * Read the name of an element or an attribute, in lower case.
+         * @param valid Valid names
+         * @return Name
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private String name(final Pattern valid) throws Markup.Unsupported {
+            final int start = this.pos;
+            while (this.pos < this.src.length()) {
+                final char chr = this.src.charAt(this.pos);
+                if (Markup.space(chr) || chr == '/' || chr == '>'
+                    || chr == '=' && this.pos > start) {
+                    break;
+                }
+                ++this.pos;
+            }
+            final String name = this.src.substring(start, this.pos)
+                .toLowerCase(Locale.ENGLISH);
+            if (!valid.matcher(name).matches()) {
+                throw new Markup.Unsupported(
+                    String.format("name \"%s\"", name)
+                );
+            }
+            return name;
+        }
+        /**
+         * Read the value of an attribute, if it is there.
+         * @return Value, decoded
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private String value() throws Markup.Unsupported {
+            this.skip();
+            String value = "";
+            if (this.pos < this.src.length()
+                && this.src.charAt(this.pos) == '=') {
+                ++this.pos;
+                this.skip();
+                final int start;
+                final int end;
+                final char quote;
+                if (this.pos < this.src.length()) {
+                    quote = this.src.charAt(this.pos);
+                } else {
+                    quote = '>';
+                }
+                if (quote == '"' || quote == '\'') {
+                    start = this.pos + 1;
+                    end = this.src.indexOf(quote, start);
+                    if (end < 0) {
+                        throw new Markup.Unsupported("unclosed attribute");
+                    }
+                    this.pos = end + 1;
+                } else {
+                    start = this.pos;
+                    while (this.pos < this.src.length()
+                        && !Markup.space(this.src.charAt(this.pos))
+                        && this.src.charAt(this.pos) != '>') {
+                        ++this.pos;
+                    }
+                    end = this.pos;
+                    if (Markup.UNQUOTED.matcher(this.src.substring(start, end))
+                        .find()) {
+                        throw new Markup.Unsupported("broken attribute");
+                    }
+                }
+                value = Markup.Lexer.decode(
+                    this.src.substring(start, end), true
+                );
+            }
+            return value;
+        }
+        /**
+         * Read the text of {@code title} or {@code style} and its end tag.
+         * @param name Name of the element
+         * @return The text
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private String raw(final String name) throws Markup.Unsupported {
+            int end = this.pos;
+            while (true) {
+                end = this.src.indexOf("</", end);
+                final int after = end + 2 + name.length();
+                if (end < 0 || after >= this.src.length()) {
+                    throw new Markup.Unsupported(
+                        String.format("unclosed <%s>", name)
+                    );
+                }
+                final char chr = this.src.charAt(after);
+                if (this.src.regionMatches(
+                    true, end + 2, name, 0, name.length()
+                ) && (Markup.space(chr) || chr == '/' || chr == '>')) {
+                    break;
+                }
+                end += 2;
+            }
+            String text = this.src.substring(this.pos, end);
+            if ("title".equals(name)) {
+                text = Markup.Lexer.decode(text, false);
+            }
+            this.pos = end + 2;
+            this.closing();
+            return text;
+        }
+        /**
+         * Skip whitespace.
+         */
+        private void skip() {
+            while (this.pos < this.src.length()
+                && Markup.space(this.src.charAt(this.pos))) {
+                ++this.pos;
+            }
+        }
+        /**
+         * Decode character references.
+         * @param text Text with references
+         * @param attr Is it a value of an attribute?
+         * @return Decoded text
+         * @throws Markup.Unsupported If something is not supported
+         */
+        private static String decode(final String text, final boolean attr)
+            throws Markup.Unsupported {
+            final StringBuilder out = new StringBuilder(text.length());
+            int idx = 0;
+            while (idx < text.length()) {
+                final char chr = text.charAt(idx);
+                if (chr != '&') {
+                    out.append(chr);
+                    ++idx;
+                    continue;
+                }
+                int end = idx + 1;
+                if (end < text.length() && text.charAt(end) == '#') {
+                    end = Markup.Lexer.number(text, end + 1, out);
+                } else {
+                    while (end < text.length()
+                        && Markup.Lexer.alnum(text.charAt(end))) {
+                        ++end;
+                    }
+                    final String ref = text.substring(idx + 1, end);
+                    if (ref.isEmpty() || attr && end < text.length()
+                        && text.charAt(end) == '=') {
+                        out.append(text, idx, end);
+                    } else if (end < text.length() && text.charAt(end) == ';'
+                        && Markup.ENTITIES.containsKey(ref)) {
+                        out.append(Markup.ENTITIES.get(ref));
+                        ++end;
+                    } else {
+                        throw new Markup.Unsupported(
+                            String.format("reference \"&%s\"", ref)
+                        );
+                    }
+                }
+                idx = end;
+            }
+            return out.toString();
+        }
+        /**
+         * Decode a numeric character reference.
+         * @param text Text with the reference
+         * @param start Position right after {@code &#}
+         * @param out Where to append the character
+         * @return Position right after the reference
+         * @throws Markup.Unsupported If something is not supported
+         * @checkstyle MagicNumber (30 lines)
+         */
+        private static int number(final String text, final int start,
+            final StringBuilder out) throws Markup.Unsupported {
+            int end = start;
+            int radix = 10;
+            if (end < text.length()
+                && Character.toLowerCase(text.charAt(end)) == 'x') {
+                radix = 16;
+                ++end;
+            }
+            final int digits = end;
+            while (end < text.length() && end - digits < 7
+                && Character.digit(text.charAt(end), radix) >= 0) {
+                ++end;
+            }
+            if (end == digits || end >= text.length()
+                || text.charAt(end) != ';') {
+                throw new Markup.Unsupported("numeric reference");
+            }
+            final int code = Integer.parseInt(
+                text.substring(digits, end), radix
+            );
+            if (code < 0x20 && code != '\t' && code != '\n'
+                || code >= 0x7f && code <= 0x9f
+                || code >= 0xd800 && code <= 0xdfff || code > 0x10ffff) {
+                throw new Markup.Unsupported(
+                    String.format("character #%d", code)
+                );
+            }
+            out.appendCodePoint(code);
+            return end + 1;
+        }
+        /**
+         * Is it an ASCII letter?
+         * @param chr The character
+         * @return TRUE if it is
+         */
+        private static boolean letter(final char chr) {
+            final char lower = Character.toLowerCase(chr);
+            return lower >= 'a' && lower <= 'z';
+        }
+        /**
+         * Is it an ASCII letter or a digit?
+         * @param chr The character
+         * @return TRUE if it is
+         */
+        private static boolean alnum(final char chr) {
+            return Markup.Lexer.letter(chr) || chr >= '0' && chr <= '9';
+        }
+    }
+
+}
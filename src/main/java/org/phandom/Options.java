@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Options of rendering.
+ *
+ * <p>The object is immutable, every method that changes an option
+ * returns a new object:
+ *
+ * <pre>Document dom = new Phandom(html).with(
+ *   new Options().timeout(5L, TimeUnit.SECONDS)
+ * ).dom();</pre>
+ *
+ * <p>Default timeout is taken from {@code phandom.timeout} system
+ * property, in milliseconds, and is zero (no timeout) if the property
+ * is not set. Without a timeout, rendering that waits for a condition
+ * of readiness other than {@link Ready.Now} is limited to one minute,
+ * so that a condition which is never met fails with {@link Timeout}
+ * instead of holding the process forever.
+ *
+ * <p>Rules of resource filtering are checked in the order they were
+ * added, the first matching rule wins. Resources that don't match any
+ * rule are loaded. When there is at least one rule, the numbers of
+ * loaded and blocked resources are reported at the end of the XHTML,
+ * in a processing instruction, for example
+ * {@code <?phandom loaded="12" blocked="40"?>}.
+ *
+ * <p>By default a page is serialized right after it is loaded, other
+ * conditions can be set through {@link #ready(Ready)}.
+ *
+ * <p>Instead of the entire document, only the nodes selected by
+ * a {@link Query} may be sent back, see {@link #query(Query)}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode
+@Loggable(Loggable.DEBUG)
+public final class Options {
+
+    /**
+     * Limit of rendering that waits for a condition, in milliseconds,
+     * when there is no timeout.
+     */
+    private static final long WAIT = TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * Timeout of rendering, in milliseconds, or zero if no timeout.
+     */
+    private final transient long msec;
+
+    /**
+     * Rules of resource filtering, comma-separated JSON objects.
+     */
+    private final transient String rules;
+
+    /**
+     * Condition of readiness, JSON object.
+     */
+    private final transient String cond;
+
+    /**
+     * Query, JSON object, or "null" to get the entire document.
+     */
+    private final transient String select;
+
+    /**
+     * Public ctor.
+     */
+    public Options() {
+        this(
+            Long.getLong("phandom.timeout", 0L), "",
+            new Ready.Now().json(), "null"
+        );
+    }
+
+    /**
+     * Private ctor.
+     * @param timeout Timeout in milliseconds
+     * @param rls Rules of resource filtering
+     * @param ready Condition of readiness
+     * @param query Query or "null"
+     */
+    private Options(final long timeout, final String rls,
+        final String ready, final String query) {
+        this.msec = timeout;
+        this.rules = rls;
+        this.cond = ready;
+        this.select = query;
+    }
+
+    /**
+     * With this timeout of rendering, zero means no timeout (or one
+     * minute if there is a condition of readiness to wait for).
+     * @param time Timeout
+     * @param unit Time unit
+     * @return New options
+     */
+    public Options timeout(final long time, final TimeUnit unit) {
+        if (time < 0L) {
+            throw new IllegalArgumentException("timeout can't be negative");
+        }
+        return new Options(
+            unit.toMillis(time), this.rules, this.cond, this.select
+        );
+    }
+
+    /**
+     * With this condition of readiness for serialization.
+     * @param ready The condition
+     * @return New options
+     */
+    public Options ready(final Ready ready) {
+        return new Options(
+            this.msec, this.rules, ready.json(), this.select
+        );
+    }
+
+    /**
+     * With this query, to get only the nodes it selects.
+     * @param query The query
+     * @return New options
+     */
+    public Options query(final Query query) {
+        return new Options(
+            this.msec, this.rules, this.cond, query.json()
+        );
+    }
+
+    /**
+     * With a rule to load resources that match the filter.
+     * @param filter The filter
+     * @return New options
+     */
+    public Options allow(final Filter filter) {
+        return this.rule(true, filter);
+    }
+
+    /**
+     * With a rule to block resources that match the filter.
+     * @param filter The filter
+     * @return New options
+     */
+    public Options deny(final Filter filter) {
+        return this.rule(false, filter);
+    }
+
+    /**
+     * Timeout of rendering.
+     * @return Milliseconds, or zero if there is no timeout
+     */
+    public long timeout() {
+        return Options.limit(this.msec, this.cond);
+    }
+
+    /**
+     * Is the DOM right after loading all we need? When there are no
+     * rules of resource filtering, nothing to wait for and no query,
+     * a script-free page may be rendered without PhantomJS, see
+     * {@link Inline}.
+     * @return TRUE if it is
+     */
+    boolean plain() {
+        return this.rules.isEmpty() && "null".equals(this.select)
+            && new Ready.Now().json().equals(this.cond);
+    }
+
+    /**
+     * Describe them in JSON, for {@code dom.js}.
+     * @return JSON object
+     */
+    public String json() {
+        return String.format(
+            // @checkstyle LineLength (1 line)
+            "{\"timeout\":%d,\"rules\":[%s],\"ready\":%s,\"query\":%s}",
+            this.timeout(), this.rules, this.cond, this.select
+        );
+    }
+
+    /**
+     * Timeout of waiting for a condition of readiness.
+     * @param msec Timeout in milliseconds, or zero if no timeout
+     * @param ready Condition of readiness, JSON object
+     * @return Milliseconds, or zero if there is no timeout
+     */
+    static long limit(final long msec, final String ready) {
+        long limit = msec;
+        if (limit == 0L && !new Ready.Now().json().equals(ready)) {
+            limit = Options.WAIT;
+        }
+        return limit;
+    }
+
+    /**
+     * With one more rule of resource filtering.
+     * @param allow TRUE if matching resources have to be loaded
+     * @param filter The filter
+     * @return New options
+     */
+    private Options rule(final boolean allow, final Filter filter) {
+        final StringBuilder all = new StringBuilder(this.rules);
+        if (all.length() > 0) {
+            all.append(',');
+        }
+        all.append(
+            String.format(
+                "{\"allow\":%b,\"filter\":%s}", allow, filter.json()
+            )
+        );
+        return new Options(
+            this.msec, all.toString(), this.cond, this.select
+        );
+    }
+
+}
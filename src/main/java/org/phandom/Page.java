@@ -32,7 +32,10 @@ package org.phandom;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -46,7 +49,7 @@ import org.apache.commons.io.Charsets;
  * @since 0.3
  */
 @Immutable
-interface Page {
+public interface Page {
 
     /**
      * Get its URI.
@@ -55,25 +58,61 @@ interface Page {
      */
     URI uri() throws IOException;
 
+    /**
+     * Describe it in JSON, for {@code dom.js}.
+     * @return JSON object
+     * @since 0.4
+     */
+    String json();
+
     /**
      * Text page.
      */
     @Immutable
     @ToString
-    @EqualsAndHashCode(of = "html")
+    @EqualsAndHashCode(of = { "html", "base" })
     @Loggable(Loggable.DEBUG)
     final class Text implements Page {
         /**
          * HTML content.
          */
         private final transient String html;
+        /**
+         * Base URL to resolve relative links against.
+         */
+        private final transient String base;
         /**
          * Public ctor.
          * @param content HTML content
          */
         public Text(final String content) {
+            this(content, URI.create("about:blank"));
+        }
+        /**
+         * Public ctor.
+         * @param content HTML content
+         * @param url Base URL to resolve relative links against
+         * @since 0.4
+         */
+        public Text(final String content, final URI url) {
             this.html = content;
+            this.base = url.toString();
+        }
+        /**
+         * Get its HTML content.
+         * @return HTML
+         * @since 0.4
+         */
+        String html() {
+            return this.html;
         }
+        /**
+         * {@inheritDoc}
+         *
+         * <p>The HTML is saved to a new temporary file, which is given
+         * away to the caller: it has to be deleted when it's not needed,
+         * otherwise {@link Sweep} deletes it an hour later.
+         */
         @Override
         public URI uri() throws IOException {
             return new Temp(
@@ -81,7 +120,91 @@ interface Page {
                     this.html.getBytes(Charsets.UTF_8)
                 ),
                 ".html"
-            ).file().toURI();
+            ).release().toURI();
+        }
+        @Override
+        public String json() {
+            return String.format(
+                "{\"html\":%s,\"base\":%s}",
+                new Json(this.html), new Json(this.base)
+            );
+        }
+    }
+
+    /**
+     * Page streamed from an input stream.
+     *
+     * <p>The stream is moved to a temporary file right away, without
+     * passing through a string or a byte array on heap, and PhantomJS
+     * reads the HTML from that file. It's the way to render huge
+     * generated documents. The file is deleted by {@link #close()};
+     * {@link Phandom} does it right after rendering the page, so it can
+     * be rendered only once. A page that is never closed loses its file
+     * when it is garbage collected, see {@link Sweep}.
+     *
+     * @since 0.4
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = { "temp", "base" })
+    @Loggable(Loggable.DEBUG)
+    final class Stream implements Page, Closeable {
+        /**
+         * File with HTML content.
+         */
+        private final transient Temp temp;
+        /**
+         * Base URL to resolve relative links against.
+         */
+        private final transient String base;
+        /**
+         * Public ctor.
+         * @param input Stream with HTML in UTF-8, read to the end,
+         *  but not closed
+         * @throws IOException If fails to read the stream
+         */
+        public Stream(final InputStream input) throws IOException {
+            this(input, URI.create("about:blank"));
+        }
+        /**
+         * Public ctor.
+         * @param input Stream with HTML in UTF-8, read to the end,
+         *  but not closed
+         * @param url Base URL to resolve relative links against
+         * @throws IOException If fails to read the stream
+         */
+        public Stream(final InputStream input, final URI url)
+            throws IOException {
+            this.temp = new Temp(input, ".html");
+            this.base = url.toString();
+        }
+        @Override
+        public URI uri() {
+            return this.file().toURI();
+        }
+        @Override
+        public String json() {
+            return String.format(
+                "{\"file\":%s,\"base\":%s}",
+                new Json(this.file().getAbsolutePath()), new Json(this.base)
+            );
+        }
+        @Override
+        public void close() {
+            this.temp.close();
+        }
+        /**
+         * File with HTML, which must exist.
+         * @return File
+         */
+        private File file() {
+            final File file = this.temp.file();
+            if (!file.exists()) {
+                throw new IllegalStateException(
+                    "the page is closed, a stream can be rendered only once"
+                );
+            }
+            return file;
         }
     }
 
@@ -108,6 +231,10 @@ interface Page {
         public URI uri() {
             return URI.create(this.href);
         }
+        @Override
+        public String json() {
+            return String.format("{\"uri\":%s}", new Json(this.href));
+        }
     }
 
 }
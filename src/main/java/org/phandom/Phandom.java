@@ -32,23 +32,33 @@ package org.phandom;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.log.Logger;
-import com.jcabi.log.VerboseProcess;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
-import java.util.logging.Level;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import javax.validation.constraints.NotNull;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.CharEncoding;
 import org.w3c.dom.Document;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * PhantomJS DOM.
@@ -80,31 +90,42 @@ import org.xml.sax.SAXException;
  *   }
  * }</pre>
  *
+ * <p>Pages are always rendered through PhantomJS. Static markup,
+ * without scripts and event handlers, may be converted right in the
+ * JVM instead, by the {@link Inline} engine, given to
+ * {@link #dom(Engine)}.
+ *
+ * <p>In a large test suite use {@link PhandomRule} instead, which
+ * checks the installation only once and renders pages through a shared
+ * pool of PhantomJS processes.
+ *
+ * <p>Switches of PhantomJS, like its disk cache, and settings of pages,
+ * like the user agent, are set by {@link #with(Launch)}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 0.1
  */
 @Immutable
 @ToString
-@EqualsAndHashCode(of = "page")
+@EqualsAndHashCode(of = { "page", "options", "launch" })
 @Loggable(Loggable.DEBUG)
 public final class Phandom {
 
     /**
-     * Name of binary phantomjs.
+     * The page to render.
      */
-    private static final String BIN = "phantomjs";
+    private final transient Page page;
 
     /**
-     * Pattern to match phantomjs version.
+     * Options of rendering.
      */
-    private static final Pattern VERSION =
-        Pattern.compile("\\d+\\.\\d+\\.\\d+");
+    private final transient Options options;
 
     /**
-     * The page to render.
+     * Options of PhantomJS processes.
      */
-    private final transient Page page;
+    private final transient Launch launch;
 
     /**
      * Public ctor.
@@ -116,11 +137,26 @@ public final class Phandom {
 
     /**
      * Public ctor.
-     * @param stream Stream with content
+     * @param content Content to encapsulate
+     * @param base Base URL to resolve relative links against
+     * @since 0.4
+     */
+    public Phandom(@NotNull final String content, @NotNull final URI base) {
+        this(new Page.Text(content, base));
+    }
+
+    /**
+     * Public ctor.
+     *
+     * <p>The stream is moved to a temporary file, without being kept
+     * on heap, see {@link Page.Stream}. The file is deleted right after
+     * the page is rendered, that's why such an object renders only once.
+     *
+     * @param stream Stream with content, in UTF-8
      * @throws IOException If fails to read the stream
      */
     public Phandom(@NotNull final InputStream stream) throws IOException {
-        this(IOUtils.toString(stream, CharEncoding.UTF_8));
+        this(new Page.Stream(stream));
     }
 
     /**
@@ -159,65 +195,413 @@ public final class Phandom {
      * @since 0.3
      */
     private Phandom(final Page src) {
+        this(src, new Options(), new Launch());
+    }
+
+    /**
+     * Public ctor.
+     * @param src Page with sources
+     * @param opts Options of rendering
+     * @param lnch Options of PhantomJS processes
+     * @since 0.4
+     */
+    private Phandom(final Page src, final Options opts, final Launch lnch) {
         this.page = src;
+        this.options = opts;
+        this.launch = lnch;
+    }
+
+    /**
+     * With these options of rendering.
+     * @param opts Options
+     * @return New Phandom
+     * @since 0.4
+     */
+    public Phandom with(@NotNull final Options opts) {
+        return new Phandom(this.page, opts, this.launch);
+    }
+
+    /**
+     * With these options of PhantomJS processes.
+     *
+     * <p>They don't affect {@link #dom(Engine)}, since the engine
+     * starts processes with its own options.
+     *
+     * @param lnch Options
+     * @return New Phandom
+     * @since 0.4
+     */
+    public Phandom with(@NotNull final Launch lnch) {
+        return new Phandom(this.page, this.options, lnch);
     }
 
     /**
      * PhantomJS binary is installed?
+     *
+     * <p>The binary is probed only once per JVM, see {@link Binary}.
+     *
      * @return TRUE if installed
      * @since 0.2
      */
     public static boolean isInstalled() {
-        String stdout;
+        return Binary.current().installed();
+    }
+
+    /**
+     * Render many pages in one phantomjs process.
+     *
+     * <p>Pages are rendered one by one, in the order of the collection,
+     * and the process is started only once for the entire batch
+     * (unless it crashes, in which case it is started again for
+     * the remaining pages). Every page gets its own result: when its
+     * rendering fails, {@link Future#get()} throws
+     * {@link java.util.concurrent.ExecutionException} with the cause.
+     *
+     * @param pages Pages to render
+     * @return DOMs, one per page, all of them already completed
+     * @since 0.4
+     */
+    public static List<Future<Document>> batch(
+        @NotNull final Collection<Page> pages) {
+        return Phandom.batch(pages, new Options());
+    }
+
+    /**
+     * Render many pages in one phantomjs process, with these options.
+     * @param pages Pages to render
+     * @param options Options of rendering
+     * @return DOMs, one per page, all of them already completed
+     * @see #batch(Collection)
+     * @since 0.4
+     */
+    public static List<Future<Document>> batch(
+        @NotNull final Collection<Page> pages,
+        @NotNull final Options options) {
+        final Pool pool = new Pool(1, Integer.MAX_VALUE);
+        final List<Future<Document>> doms =
+            new ArrayList<Future<Document>>(pages.size());
         try {
-            stdout = new VerboseProcess(
-                new ProcessBuilder(Phandom.BIN, "--version"),
-                Level.FINE, Level.FINE
-            ).stdoutQuietly().trim();
-        } catch (final IllegalStateException ex) {
-            stdout = ex.getLocalizedMessage();
+            for (final Page src : pages) {
+                final FutureTask<Document> future = new FutureTask<Document>(
+                    new Callable<Document>() {
+                        @Override
+                        public Document call() throws IOException {
+                            return new Phandom(src).with(options)
+                                .dom(pool);
+                        }
+                    }
+                );
+                future.run();
+                doms.add(future);
+            }
+        } finally {
+            pool.close();
         }
-        return Phandom.VERSION.matcher(stdout).matches();
+        return doms;
     }
 
     /**
      * Get DOM.
+     *
+     * <p>The page is rendered by {@link Engine.Default}; use
+     * {@link #dom(Engine)} to report renders to a {@link Listener}.
+     *
      * @return DOM
      * @throws IOException If fails
      */
     public Document dom() throws IOException {
-        final Process process = this.builder().start();
-        process.getOutputStream().close();
-        return Phandom.parse(
-            new VerboseProcess(process, Level.FINE, Level.FINE).stdout()
+        return this.dom(this.engine());
+    }
+
+    /**
+     * Get only the nodes selected by the XPath, see {@link Query}.
+     * @param xpath XPath expression, e.g. "//div[@class='price']"
+     * @return DOM with matching nodes, under {@code <matches>}
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public Document query(@NotNull final String xpath) throws IOException {
+        return this.query(new Query.XPath(xpath));
+    }
+
+    /**
+     * Get only the nodes selected by the query.
+     *
+     * <p>The query is evaluated inside PhantomJS, and only the matching
+     * nodes are serialized and parsed, instead of the entire document.
+     *
+     * @param query The query
+     * @return DOM with matching nodes, under {@code <matches>}
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public Document query(@NotNull final Query query) throws IOException {
+        return this.with(this.options.query(query)).dom();
+    }
+
+    /**
+     * Stream SAX events of the DOM to the handler.
+     *
+     * <p>XHTML is streamed from the engine to the SAX parser, see
+     * {@link Engine#stream(Page, Options)}, and is never kept in
+     * memory in full.
+     *
+     * @param handler Handler of SAX events
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public void dom(@NotNull final ContentHandler handler)
+        throws IOException {
+        this.dom(handler, this.engine());
+    }
+
+    /**
+     * Stream SAX events of the DOM, rendered by the given engine,
+     * to the handler.
+     * @param handler Handler of SAX events
+     * @param engine Engine to render with, for example {@link Pool}
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public void dom(@NotNull final ContentHandler handler,
+        @NotNull final Engine engine) throws IOException {
+        final InputStream input = this.stream(engine);
+        try {
+            Phandom.parse(input, handler);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Write XHTML produced by phantomjs to the output stream, as is.
+     * @param output Output stream to write to, will not be closed
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public void write(@NotNull final OutputStream output) throws IOException {
+        this.write(output, this.engine());
+    }
+
+    /**
+     * Write XHTML, rendered by the given engine, to the output
+     * stream, as is.
+     * @param output Output stream to write to, will not be closed
+     * @param engine Engine to render with, for example {@link Pool}
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public void write(@NotNull final OutputStream output,
+        @NotNull final Engine engine) throws IOException {
+        final InputStream input = this.stream(engine);
+        try {
+            IOUtils.copyLarge(input, output);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Load the page into a live PhantomJS process and keep it there.
+     *
+     * <p>The session must be closed when it is not needed any more,
+     * otherwise the process stays alive.
+     *
+     * @return Session with the loaded page
+     * @throws IOException If fails to load the page
+     * @since 0.4
+     */
+    public Session session() throws IOException {
+        try {
+            return new Session(this.page, this.options, this.launch);
+        } finally {
+            this.release();
+        }
+    }
+
+    /**
+     * Get DOM, rendered by the given engine.
+     *
+     * <p>The XHTML is streamed from the engine to the parser, see
+     * {@link Engine#stream(Page, Options)}.
+     *
+     * @param engine Engine to render with, for example {@link Pool}
+     * @return DOM
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public Document dom(@NotNull final Engine engine) throws IOException {
+        final InputStream input = this.stream(engine);
+        try {
+            return Phandom.parse(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Get DOM asynchronously.
+     *
+     * <p>Rendering happens in a thread of the provided executor, which
+     * also caps the number of concurrently running phantomjs processes,
+     * for example {@code Executors.newFixedThreadPool(4)}.
+     *
+     * @param executor Executor to render in
+     * @return Future DOM
+     * @since 0.4
+     */
+    public Future<Document> domAsync(@NotNull final Executor executor) {
+        final Phandom phandom = this;
+        return Phandom.submit(
+            executor,
+            new Callable<Document>() {
+                @Override
+                public Document call() throws IOException {
+                    return phandom.dom();
+                }
+            }
+        );
+    }
+
+    /**
+     * Get DOM asynchronously, rendered by the given engine.
+     * @param executor Executor to render in
+     * @param engine Engine to render with, for example {@link Pool}
+     * @return Future DOM
+     * @since 0.4
+     */
+    public Future<Document> domAsync(@NotNull final Executor executor,
+        @NotNull final Engine engine) {
+        final Phandom phandom = this;
+        return Phandom.submit(
+            executor,
+            new Callable<Document>() {
+                @Override
+                public Document call() throws IOException {
+                    return phandom.dom(engine);
+                }
+            }
         );
     }
 
     /**
      * Create process builder.
+     *
+     * <p>A text page is saved to a temporary file first, which is
+     * deleted by the process as soon as the page is rendered (or by
+     * {@link Sweep} an hour later, if the process is never started).
+     *
      * @return Builder
      * @throws IOException If fails
      */
     public ProcessBuilder builder() throws IOException {
-        final InputStream src = this.getClass().getResourceAsStream("dom.js");
+        final URI uri = this.page.uri();
+        final ProcessBuilder builder =
+            Phandom.phantomjs(this.launch, uri.toString());
+        if (this.page instanceof Page.Text) {
+            builder.command().add(new File(uri).getAbsolutePath());
+        }
+        return builder;
+    }
+
+    /**
+     * Create phantomjs process, which gets the page through stdin.
+     * @param src The page
+     * @param options Options of rendering
+     * @param launch Options of the process
+     * @return Process
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    static Phantom phantom(final Page src, final Options options,
+        final Launch launch) throws IOException {
+        return new Phantom(
+            Phandom.phantomjs(launch, "--stdin"),
+            String.format(
+                "{\"page\":%s,\"options\":%s}", src.json(), options.json()
+            ),
+            options.timeout()
+        );
+    }
+
+    /**
+     * Create process builder for phantomjs with dom.js.
+     *
+     * <p>Level of diagnostics is passed to {@code dom.js} in
+     * {@code PHANDOM_LOG} environment variable, see {@link Stderr},
+     * and settings of pages in {@code PHANDOM_SETTINGS}.
+     *
+     * @param launch Options of the process
+     * @param arg Argument of dom.js
+     * @return Builder
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    static ProcessBuilder phantomjs(final Launch launch, final String arg)
+        throws IOException {
+        final List<String> cmd = new LinkedList<String>();
+        cmd.add(Binary.current().path());
+        cmd.addAll(launch.switches());
+        cmd.add(Script.file().getAbsolutePath());
+        cmd.add(arg);
+        final ProcessBuilder builder = new ProcessBuilder(cmd);
+        builder.environment().put("PHANDOM_LOG", Stderr.level());
+        builder.environment().put("PHANDOM_SETTINGS", launch.settings());
+        return builder;
+    }
+
+    /**
+     * Default engine, with options of PhantomJS processes.
+     * @return Engine
+     */
+    private Engine engine() {
+        return new Engine.Default(this.launch, new Listener.Silent());
+    }
+
+    /**
+     * Render the page by the engine.
+     * @param engine The engine
+     * @return XHTML, the stream has to be closed
+     * @throws IOException If fails
+     */
+    private InputStream stream(final Engine engine) throws IOException {
         try {
-            return new ProcessBuilder(
-                Phandom.BIN,
-                new Temp(src, ".js").file().getAbsolutePath(),
-                this.page.uri().toString()
-            );
+            return engine.stream(this.page, this.options);
         } finally {
-            src.close();
+            this.release();
         }
     }
 
+    /**
+     * Delete the file of a stream page, which is rendered only once,
+     * see {@link Page.Stream}.
+     */
+    private void release() {
+        if (this.page instanceof Page.Stream) {
+            Page.Stream.class.cast(this.page).close();
+        }
+    }
+
+    /**
+     * Submit a task to the executor.
+     * @param executor The executor
+     * @param task The task
+     * @return Future result
+     */
+    private static Future<Document> submit(final Executor executor,
+        final Callable<Document> task) {
+        final FutureTask<Document> future = new FutureTask<Document>(task);
+        executor.execute(future);
+        return future;
+    }
+
     /**
      * Parse XML into DOM.
      * @param xml XML to parse
      * @return DOM
      * @throws IOException If fails
      */
-    private static Document parse(final String xml) throws IOException {
+    static Document parse(final String xml) throws IOException {
         if (xml.isEmpty()) {
             throw new IOException(
                 // @checkstyle LineLength (1 line)
@@ -243,4 +627,51 @@ public final class Phandom {
         }
     }
 
+    /**
+     * Parse XML stream into DOM.
+     * @param xml XML to parse
+     * @return DOM
+     * @throws IOException If fails
+     */
+    static Document parse(final InputStream xml) throws IOException {
+        try {
+            return DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder()
+                .parse(xml);
+        } catch (final ParserConfigurationException ex) {
+            throw new IOException("internal parsing error of phandom", ex);
+        } catch (final SAXException ex) {
+            Logger.warn(
+                Phandom.class,
+                "SAX failure on HTML by phantomjs: %s", ex.getMessage()
+            );
+            throw new IOException("internal SAX error of phandom", ex);
+        }
+    }
+
+    /**
+     * Parse XML stream into SAX events.
+     * @param xml XML to parse
+     * @param handler Handler of events
+     * @throws IOException If fails
+     */
+    private static void parse(final InputStream xml,
+        final ContentHandler handler) throws IOException {
+        try {
+            final XMLReader reader = SAXParserFactory.newInstance()
+                .newSAXParser()
+                .getXMLReader();
+            reader.setContentHandler(handler);
+            reader.parse(new InputSource(xml));
+        } catch (final ParserConfigurationException ex) {
+            throw new IOException("internal parsing error of phandom", ex);
+        } catch (final SAXException ex) {
+            Logger.warn(
+                Phandom.class,
+                "SAX failure on HTML by phantomjs: %s", ex.getMessage()
+            );
+            throw new IOException("internal SAX error of phandom", ex);
+        }
+    }
+
 }
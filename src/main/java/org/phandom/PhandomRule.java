@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.junit.Assume;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.w3c.dom.Document;
+
+/**
+ * JUnit rule that skips tests when PhantomJS is not installed and
+ * renders pages through a warm pool of workers, shared by all tests
+ * in the JVM.
+ *
+ * <p>Use it as a class rule:
+ *
+ * <pre>public class FooTest {
+ *   &#64;ClassRule
+ *   public static final PhandomRule PHANTOM = new PhandomRule();
+ *   &#64;Test
+ *   public void testPrintsHelloWorld() {
+ *     MatcherAssert.assertThat(
+ *       PHANTOM.dom(new Phandom("&lt;html>&lt;p>Hey!&lt;/p>&lt;/html>")),
+ *       XhtmlMatchers.hasXPath("//body/p[.='Hey!']")
+ *     );
+ *   }
+ * }</pre>
+ *
+ * <p>Installation is checked only once per JVM, see {@link Binary}.
+ * All rules with the same concurrency limit share one {@link Pool},
+ * no matter how many test classes use them and in how many threads
+ * they run; its workers are stopped when the JVM exits. The default
+ * limit is the number of processors, unless {@code phandom.threads}
+ * system property is set, e.g. in Surefire
+ * {@code systemPropertyVariables}. Every Surefire fork
+ * is a separate JVM with its own pool, so the total number of
+ * {@code phantomjs} processes is the limit multiplied by
+ * {@code forkCount}.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString
+@EqualsAndHashCode(of = "threads")
+public final class PhandomRule implements TestRule {
+
+    /**
+     * Shared pools, by their sizes.
+     */
+    private static final ConcurrentMap<Integer, Pool> POOLS =
+        new ConcurrentHashMap<Integer, Pool>(0);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(
+            new Thread("phandom-rule") {
+                @Override
+                public void run() {
+                    for (final Pool pool : PhandomRule.POOLS.values()) {
+                        pool.close();
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Maximum number of concurrent renders.
+     */
+    private final transient int threads;
+
+    /**
+     * Public ctor, with the default concurrency limit.
+     */
+    public PhandomRule() {
+        this(
+            Integer.getInteger(
+                "phandom.threads",
+                Runtime.getRuntime().availableProcessors()
+            )
+        );
+    }
+
+    /**
+     * Public ctor.
+     * @param total Maximum number of concurrent renders
+     */
+    public PhandomRule(final int total) {
+        if (total < 1) {
+            throw new IllegalArgumentException(
+                "concurrency limit must be positive"
+            );
+        }
+        this.threads = total;
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description desc) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Assume.assumeTrue(Phandom.isInstalled());
+                base.evaluate();
+            }
+        };
+    }
+
+    /**
+     * Shared engine.
+     * @return Engine, see {@link Phandom#dom(Engine)}
+     */
+    public Engine engine() {
+        Pool pool = PhandomRule.POOLS.get(this.threads);
+        if (pool == null) {
+            final Pool fresh = new Pool(this.threads);
+            pool = PhandomRule.POOLS.putIfAbsent(this.threads, fresh);
+            if (pool == null) {
+                pool = fresh;
+            } else {
+                fresh.close();
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Get DOM, rendered by the shared engine.
+     * @param phandom The page to render
+     * @return DOM
+     * @throws IOException If fails
+     */
+    public Document dom(final Phandom phandom) throws IOException {
+        return phandom.dom(this.engine());
+    }
+
+}
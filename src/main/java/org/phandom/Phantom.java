@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * One phantomjs process, with its stdout streamed to a reader.
+ *
+ * <p>The given text is written to stdin of the process, which is then
+ * closed. Nothing is buffered here: the reader consumes stdout while
+ * the process is still running. The reader may close the stream (XML
+ * parsers do), but the rest of stdout is drained anyway, so that
+ * the process is never blocked on a full pipe. Stderr is logged in
+ * a separate thread, see {@link Stderr}. The process is killed by
+ * {@link Watchdog} if it doesn't finish in time.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Phantom {
+
+    /**
+     * Exit code of dom.js when its time is out.
+     */
+    public static final int TIMEOUT = 3;
+
+    /**
+     * Process builder.
+     */
+    private final transient ProcessBuilder builder;
+
+    /**
+     * Text for stdin.
+     */
+    private final transient String stdin;
+
+    /**
+     * Timeout in milliseconds, or zero.
+     */
+    private final transient long msec;
+
+    /**
+     * Ctor.
+     * @param bldr Process builder
+     * @param input Text to send to stdin
+     * @param timeout Timeout in milliseconds, or zero if no timeout
+     */
+    Phantom(final ProcessBuilder bldr, final String input,
+        final long timeout) {
+        this.builder = bldr;
+        this.stdin = input;
+        this.msec = timeout;
+    }
+
+    /**
+     * Start the process, read its stdout and wait for its exit.
+     * @param reader Reader of stdout
+     * @return What the reader returned
+     * @param <T> Type of result
+     * @throws IOException If fails
+     */
+    public <T> T read(final Phantom.Reader<T> reader) throws IOException {
+        return this.read(reader, new Probe());
+    }
+
+    /**
+     * Start the process, read its stdout and wait for its exit,
+     * reporting what happened to the probe.
+     * @param reader Reader of stdout
+     * @param probe Probe to report to
+     * @return What the reader returned
+     * @param <T> Type of result
+     * @throws IOException If fails
+     */
+    public <T> T read(final Phantom.Reader<T> reader, final Probe probe)
+        throws IOException {
+        final long mark = probe.mark();
+        final Process process = this.builder.start();
+        probe.done("spawn", mark);
+        final Stderr stderr = new Stderr(process);
+        stderr.start();
+        final Watchdog watchdog = new Watchdog(process, this.msec);
+        watchdog.start();
+        final int code;
+        final CountingInputStream stdout =
+            new CountingInputStream(process.getInputStream());
+        T result = null;
+        IOException failure = null;
+        try {
+            try {
+                this.write(process);
+                result = reader.read(new CloseShieldInputStream(stdout));
+            } catch (final IOException ex) {
+                failure = ex;
+            } finally {
+                IOUtils.copy(stdout, new NullOutputStream());
+                stdout.close();
+            }
+            code = Phantom.waitFor(process);
+        } finally {
+            watchdog.cancel();
+        }
+        probe.exit(code);
+        probe.count("bytes", stdout.getByteCount());
+        probe.stats(stderr.stats());
+        if (watchdog.fired() || code == Phantom.TIMEOUT) {
+            throw new Timeout(stderr.phase(), this.msec);
+        }
+        if (code != 0) {
+            throw new IllegalStateException(
+                String.format("phantomjs failed with code #%d", code)
+            );
+        }
+        if (stdout.getByteCount() == 0) {
+            throw new IOException(
+                // @checkstyle LineLength (1 line)
+                "phantomjs produced an empty output instead of HTML, looks like an internal bug of phandom"
+            );
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Write text to stdin of the process and close it.
+     * @param process The process
+     * @throws IOException If fails
+     */
+    private void write(final Process process) throws IOException {
+        final OutputStream input = process.getOutputStream();
+        try {
+            IOUtils.write(this.stdin, input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Wait for the process to finish.
+     * @param process The process
+     * @return Exit code
+     * @throws IOException If interrupted
+     */
+    private static int waitFor(final Process process) throws IOException {
+        try {
+            return process.waitFor();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Reader of stdout.
+     * @param <T> Type of result
+     */
+    interface Reader<T> {
+        /**
+         * Read it.
+         * @param stdout Stdout of the process
+         * @return Result
+         * @throws IOException If fails
+         */
+        T read(InputStream stdout) throws IOException;
+    }
+
+}
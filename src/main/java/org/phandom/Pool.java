@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Loggable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Pool of long-living PhantomJS workers.
+ *
+ * <p>Instead of starting a new {@code phantomjs} process for every
+ * page, the pool keeps up to {@code size} processes alive and sends
+ * pages to them one by one. A worker is started on demand, replaced
+ * when it crashes and recycled after the given number of jobs,
+ * in order to keep memory leaks of WebKit under control:
+ *
+ * <pre>Pool pool = new Pool(4);
+ * try {
+ *   Document dom = new Phandom(html).dom(pool);
+ * } finally {
+ *   pool.close();
+ * }</pre>
+ *
+ * <p>Every render is reported to the listener, if it is provided,
+ * together with the time spent waiting for a free worker and the
+ * numbers of idle workers and waiting threads, see {@link Report}.
+ *
+ * <p>Workers are started with the given {@link Launch}, for example
+ * with a disk cache, which they all share.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString(of = { "size", "max" })
+@Loggable(Loggable.DEBUG)
+public final class Pool implements Engine, Launch.Source, Closeable {
+
+    /**
+     * Default maximum number of jobs per worker.
+     */
+    private static final int JOBS = 100;
+
+    /**
+     * Maximum number of workers.
+     */
+    private final transient int size;
+
+    /**
+     * Maximum number of jobs per worker, before it gets recycled.
+     */
+    private final transient int max;
+
+    /**
+     * Slots for busy workers.
+     */
+    private final transient Semaphore slots;
+
+    /**
+     * Idle workers.
+     */
+    private final transient Queue<Worker> idle;
+
+    /**
+     * Is it closed?
+     */
+    private final transient AtomicBoolean closed;
+
+    /**
+     * Listener of renders.
+     */
+    private final transient Listener listener;
+
+    /**
+     * Options of worker processes.
+     */
+    private final transient Launch launch;
+
+    /**
+     * Public ctor.
+     * @param total Maximum number of workers
+     */
+    public Pool(final int total) {
+        this(total, Pool.JOBS);
+    }
+
+    /**
+     * Public ctor.
+     * @param total Maximum number of workers
+     * @param jobs Maximum number of jobs per worker
+     */
+    public Pool(final int total, final int jobs) {
+        this(total, jobs, new Listener.Silent());
+    }
+
+    /**
+     * Public ctor.
+     * @param total Maximum number of workers
+     * @param jobs Maximum number of jobs per worker
+     * @param lstnr Listener of renders
+     */
+    public Pool(final int total, final int jobs, final Listener lstnr) {
+        this(total, jobs, lstnr, new Launch());
+    }
+
+    /**
+     * Public ctor.
+     * @param total Maximum number of workers
+     * @param jobs Maximum number of jobs per worker
+     * @param lstnr Listener of renders
+     * @param lnch Options of worker processes
+     */
+    public Pool(final int total, final int jobs, final Listener lstnr,
+        final Launch lnch) {
+        if (total < 1) {
+            throw new IllegalArgumentException(
+                "pool size must be positive"
+            );
+        }
+        if (jobs < 1) {
+            throw new IllegalArgumentException(
+                "number of jobs per worker must be positive"
+            );
+        }
+        this.size = total;
+        this.max = jobs;
+        this.slots = new Semaphore(total, true);
+        this.idle = new ConcurrentLinkedQueue<Worker>();
+        this.closed = new AtomicBoolean();
+        this.listener = lstnr;
+        this.launch = lnch;
+    }
+
+    @Override
+    public String render(final Page page, final Options options)
+        throws IOException {
+        final InputStream input = this.stream(page, options);
+        try {
+            return IOUtils.toString(input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public InputStream stream(final Page page, final Options options)
+        throws IOException {
+        final Probe probe = new Probe();
+        InputStream input = null;
+        try {
+            final long mark = probe.mark();
+            try {
+                this.slots.acquire();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            }
+            probe.done("wait", mark);
+            try {
+                probe.count("idle", this.idle.size());
+                probe.count("queued", this.slots.getQueueLength());
+                final Worker worker = this.worker(probe);
+                try {
+                    input = probe.report(
+                        worker.render(page, options, probe), this.listener
+                    );
+                } finally {
+                    this.release(worker);
+                }
+            } finally {
+                this.slots.release();
+            }
+        } finally {
+            if (input == null) {
+                probe.report(this.listener);
+            }
+        }
+        return input;
+    }
+
+    @Override
+    public Launch launch() {
+        return this.launch;
+    }
+
+    @Override
+    public void close() {
+        this.closed.set(true);
+        while (true) {
+            final Worker worker = this.idle.poll();
+            if (worker == null) {
+                break;
+            }
+            worker.close();
+        }
+    }
+
+    /**
+     * Take an idle healthy worker or start a new one.
+     * @param probe Probe to report the start to
+     * @return Worker
+     * @throws IOException If fails
+     */
+    private Worker worker(final Probe probe) throws IOException {
+        if (this.closed.get()) {
+            throw new IllegalStateException("the pool is closed");
+        }
+        Worker worker = this.idle.poll();
+        while (worker != null && !worker.healthy()) {
+            worker.close();
+            worker = this.idle.poll();
+        }
+        if (worker == null) {
+            final long mark = probe.mark();
+            worker = new Worker(Phandom.phantomjs(this.launch, "--worker"));
+            probe.done("spawn", mark);
+        }
+        return worker;
+    }
+
+    /**
+     * Return the worker back to the pool, or recycle it.
+     * @param worker The worker
+     */
+    private void release(final Worker worker) {
+        if (this.closed.get() || !worker.healthy()
+            || worker.jobs() >= this.max) {
+            worker.close();
+        } else {
+            this.idle.offer(worker);
+            if (this.closed.get() && this.idle.remove(worker)) {
+                worker.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.log.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Collector of a {@link Report} during one render.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Probe {
+
+    /**
+     * Counters reported by {@code dom.js} among its phases.
+     */
+    private static final String COUNTERS = "loaded|blocked";
+
+    /**
+     * When the render started, in nanoseconds.
+     */
+    private final transient long start;
+
+    /**
+     * Phases and their durations in milliseconds.
+     */
+    private final transient Map<String, Long> times;
+
+    /**
+     * Counters.
+     */
+    private final transient Map<String, Long> counts;
+
+    /**
+     * Status code.
+     */
+    private final transient AtomicInteger status;
+
+    /**
+     * Ctor.
+     */
+    Probe() {
+        this.start = System.nanoTime();
+        this.times = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(0)
+        );
+        this.counts = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(0)
+        );
+        this.status = new AtomicInteger(-1);
+    }
+
+    /**
+     * Current moment, to be passed to {@link #done(String, long)} later.
+     * @return Nanoseconds
+     */
+    public long mark() {
+        return System.nanoTime();
+    }
+
+    /**
+     * The phase, which started at the mark, is done.
+     * @param phase Name of the phase
+     * @param mark When it started, see {@link #mark()}
+     */
+    public void done(final String phase, final long mark) {
+        this.time(
+            phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mark)
+        );
+    }
+
+    /**
+     * Set the counter.
+     * @param name Name of it, e.g. "bytes"
+     * @param value The value
+     */
+    public void count(final String name, final long value) {
+        this.counts.put(name, value);
+    }
+
+    /**
+     * Set status code.
+     * @param code Status code
+     */
+    public void exit(final int code) {
+        this.status.set(code);
+    }
+
+    /**
+     * Add statistics reported by {@code dom.js}, like
+     * "load=120 ready=0 serialize=8 loaded=4 blocked=1 output=1".
+     * @param stats Statistics
+     */
+    public void stats(final String stats) {
+        for (final String pair : stats.trim().split(" ")) {
+            final int equals = pair.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            final String name = pair.substring(0, equals);
+            final long value = Long.parseLong(pair.substring(equals + 1));
+            if (name.matches(Probe.COUNTERS)) {
+                this.count(name, value);
+            } else {
+                this.time(name, value);
+            }
+        }
+    }
+
+    /**
+     * Build the report and send it to the listener.
+     * @param listener The listener
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public void report(final Listener listener) {
+        final long total = TimeUnit.NANOSECONDS.toMillis(
+            System.nanoTime() - this.start
+        );
+        final Map<String, Long> phases;
+        synchronized (this.times) {
+            phases = new LinkedHashMap<String, Long>(this.times);
+        }
+        long rest = total;
+        for (final Long msec : phases.values()) {
+            rest -= msec;
+        }
+        phases.put("overhead", Math.max(rest, 0L));
+        phases.put("total", total);
+        final Report report;
+        synchronized (this.counts) {
+            report = new Report(phases, this.counts, this.status.get());
+        }
+        try {
+            listener.rendered(report);
+        // @checkstyle IllegalCatchCheck (1 line)
+        } catch (final RuntimeException ex) {
+            Logger.warn(
+                this, "listener %s failed: %[exception]s", listener, ex
+            );
+        }
+    }
+
+    /**
+     * Send the report to the listener when the XHTML is consumed.
+     *
+     * <p>The time from now till the stream is closed is reported as
+     * "parse" phase, since the stream is usually parsed into DOM.
+     *
+     * @param xhtml Stream with XHTML
+     * @param listener The listener
+     * @return Stream to give to the consumer
+     */
+    public InputStream report(final InputStream xhtml,
+        final Listener listener) {
+        return new Probe.Parse(xhtml, this, listener);
+    }
+
+    /**
+     * Add time to the phase.
+     * @param phase Name of the phase
+     * @param msec Milliseconds
+     */
+    private void time(final String phase, final long msec) {
+        synchronized (this.times) {
+            final Long before = this.times.get(phase);
+            if (before == null) {
+                this.times.put(phase, msec);
+            } else {
+                this.times.put(phase, before + msec);
+            }
+        }
+    }
+
+    /**
+     * Stream, which reports the probe when it is closed.
+     */
+    private static final class Parse extends ProxyInputStream
+        implements Spill.Owner {
+        /**
+         * The probe.
+         */
+        private final transient Probe probe;
+        /**
+         * Listener to report to.
+         */
+        private final transient Listener listener;
+        /**
+         * When the stream was given away, see {@link Probe#mark()}.
+         */
+        private final transient long mark;
+        /**
+         * Is it still open?
+         */
+        private final transient AtomicBoolean open;
+        /**
+         * Ctor.
+         * @param xhtml Stream with XHTML
+         * @param prb The probe
+         * @param lstnr Listener to report to
+         */
+        Parse(final InputStream xhtml, final Probe prb, final Listener lstnr) {
+            super(xhtml);
+            this.probe = prb;
+            this.listener = lstnr;
+            this.mark = prb.mark();
+            this.open = new AtomicBoolean(true);
+        }
+        @Override
+        public Spill detach() {
+            return Spill.detach(this.in);
+        }
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (this.open.compareAndSet(true, false)) {
+                    this.probe.done("parse", this.mark);
+                    this.probe.report(this.listener);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Query, which selects nodes of a page inside PhantomJS.
+ *
+ * <p>When a query is set in {@link Options#query(Query)}, only the
+ * nodes it matches are serialized and sent back, instead of the entire
+ * document. They are wrapped into {@code <match>} elements under
+ * the root {@code <matches>}: elements with their content, attributes
+ * and other nodes as text, for example:
+ *
+ * <pre>Document prices = new Phandom(html).query(
+ *   new Query.Css("div.price")
+ * );
+ * // &lt;matches&gt;&lt;match&gt;&lt;div class="price"&gt;...</pre>
+ *
+ * <p>A query that fails inside the page (e.g. a CSS selector
+ * with wrong syntax) fails the rendering, as JavaScript errors do.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@Immutable
+public interface Query {
+
+    /**
+     * Describe it in JSON, for {@code dom.js}.
+     * @return JSON object
+     */
+    String json();
+
+    /**
+     * XPath 1.0 expression, evaluated against the HTML document,
+     * e.g. "//div[@class='price']" or "count(//li)".
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "expr")
+    @Loggable(Loggable.DEBUG)
+    final class XPath implements Query {
+        /**
+         * XPath expression.
+         */
+        private final transient String expr;
+        /**
+         * Public ctor.
+         * @param xpath XPath expression
+         */
+        public XPath(final String xpath) {
+            try {
+                XPathFactory.newInstance().newXPath().compile(xpath);
+            } catch (final XPathExpressionException ex) {
+                throw new IllegalArgumentException(
+                    String.format("invalid XPath \"%s\"", xpath), ex
+                );
+            }
+            this.expr = xpath;
+        }
+        @Override
+        public String json() {
+            return String.format("{\"xpath\":%s}", new Json(this.expr));
+        }
+    }
+
+    /**
+     * Group of CSS selectors, e.g. "div.price, span.total".
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "css")
+    @Loggable(Loggable.DEBUG)
+    final class Css implements Query {
+        /**
+         * CSS selectors.
+         */
+        private final transient String css;
+        /**
+         * Public ctor.
+         * @param selectors CSS selectors, comma-separated
+         */
+        public Css(final String selectors) {
+            this.css = selectors;
+        }
+        @Override
+        public String json() {
+            return String.format("{\"css\":%s}", new Json(this.css));
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Condition of readiness of a page for serialization.
+ *
+ * <p>The condition is checked by PhantomJS right after the page is
+ * loaded and then every 50 milliseconds, until it is met. Pages that
+ * build their content asynchronously need one of them, for example:
+ *
+ * <pre>Document dom = new Phandom(html).with(
+ *   new Options()
+ *     .ready(new Ready.Selector("#app li"))
+ *     .timeout(10L, TimeUnit.SECONDS)
+ * ).dom();</pre>
+ *
+ * <p>A condition that is never met makes rendering wait forever,
+ * that's why it is recommended to use it together with a timeout.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@Immutable
+public interface Ready {
+
+    /**
+     * Describe it in JSON, for {@code dom.js}.
+     * @return JSON object
+     */
+    String json();
+
+    /**
+     * Ready right after loading, this is the default.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode
+    @Loggable(Loggable.DEBUG)
+    final class Now implements Ready {
+        @Override
+        public String json() {
+            return "{\"now\":true}";
+        }
+    }
+
+    /**
+     * Ready when there is an element matching a CSS selector.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "css")
+    @Loggable(Loggable.DEBUG)
+    final class Selector implements Ready {
+        /**
+         * CSS selector.
+         */
+        private final transient String css;
+        /**
+         * Public ctor.
+         * @param selector CSS selector, e.g. "div#main"
+         */
+        public Selector(final String selector) {
+            this.css = selector;
+        }
+        @Override
+        public String json() {
+            return String.format("{\"selector\":%s}", new Json(this.css));
+        }
+    }
+
+    /**
+     * Ready when there were no network requests in flight for
+     * some time.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "msec")
+    @Loggable(Loggable.DEBUG)
+    final class Idle implements Ready {
+        /**
+         * Milliseconds of silence.
+         */
+        private final transient long msec;
+        /**
+         * Public ctor.
+         * @param time Time of silence
+         * @param unit Time unit
+         */
+        public Idle(final long time, final TimeUnit unit) {
+            if (time < 0L) {
+                throw new IllegalArgumentException(
+                    "idle time can't be negative"
+                );
+            }
+            this.msec = unit.toMillis(time);
+        }
+        @Override
+        public String json() {
+            return String.format("{\"idle\":%d}", this.msec);
+        }
+    }
+
+    /**
+     * Ready when a JavaScript expression, evaluated inside the page,
+     * is true; exceptions thrown by it mean false.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = "expr")
+    @Loggable(Loggable.DEBUG)
+    final class Script implements Ready {
+        /**
+         * JavaScript expression.
+         */
+        private final transient String expr;
+        /**
+         * Public ctor.
+         * @param expression JavaScript, e.g. "window.loaded === true"
+         */
+        public Script(final String expression) {
+            this.expr = expression;
+        }
+        @Override
+        public String json() {
+            return String.format("{\"script\":%s}", new Json(this.expr));
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression, which means the same in Java and JavaScript.
+ *
+ * <p>Only the syntax they share is accepted:
+ *
+ * <ul>
+ *  <li>literals, {@code .}, {@code ^}, {@code $} and {@code |};
+ *  <li>groups {@code (...)}, {@code (?:...)}, {@code (?=...)} and
+ *   {@code (?!...)};
+ *  <li>quantifiers {@code *}, {@code +}, {@code ?}, {@code {n}},
+ *   {@code {n,}} and {@code {n,m}}, greedy or lazy;
+ *  <li>classes {@code [...]} and {@code [^...]}, not empty and
+ *   without nested classes and intersections;
+ *  <li>escapes {@code \d}, {@code \D}, {@code \w}, {@code \W},
+ *   {@code \s}, {@code \S}, {@code \t}, {@code \n}, {@code \r},
+ *   {@code \f}, {@code \xHH} and <code>&#92;uHHHH</code>, also
+ *   {@code \b}, {@code \B} and back references {@code \1}..{@code \9}
+ *   outside of classes, and a backslash before any other character
+ *   that is not a letter or a digit.
+ * </ul>
+ *
+ * <p>Everything else, like possessive quantifiers, lookbehind, named
+ * groups, inline flags or {@code \Q...\E}, either fails in JavaScript
+ * or means something else there, and is rejected.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Regex {
+
+    /**
+     * Escapes allowed everywhere.
+     */
+    private static final String ESCAPES = "dDwWsStnrf";
+
+    /**
+     * Escapes allowed outside of classes only.
+     */
+    private static final String OUTSIDE = "bB123456789";
+
+    /**
+     * Quantifier in braces, at the beginning of the text.
+     */
+    private static final Pattern BRACES = Pattern.compile("\\{\\d+(,\\d*)?\\}");
+
+    /**
+     * Hex digits.
+     */
+    private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]+");
+
+    /**
+     * The expression.
+     */
+    private final transient String expr;
+
+    /**
+     * Ctor.
+     * @param regex The expression
+     */
+    Regex(final String regex) {
+        this.expr = regex;
+    }
+
+    /**
+     * Check the expression.
+     *
+     * <p>The syntax is checked here, while plain errors, like unbalanced
+     * parentheses, which JavaScript rejects too, are left to
+     * {@link Pattern}.
+     *
+     * @return The expression, if it means the same in Java and JavaScript
+     * @throws IllegalArgumentException If it doesn't
+     */
+    public String portable() {
+        boolean klass = false;
+        int pos = 0;
+        while (pos < this.expr.length()) {
+            final char chr = this.expr.charAt(pos);
+            if (chr == '\\') {
+                pos = this.escape(pos, klass);
+            } else if (klass) {
+                pos = this.member(pos);
+                klass = chr != ']';
+            } else if (chr == '[') {
+                pos = this.open(pos);
+                klass = true;
+            } else if (chr == '(') {
+                pos = this.group(pos);
+            } else if (chr == '{') {
+                pos = this.quantifier(pos, this.braces(pos));
+            } else if (chr == '*' || chr == '+' || chr == '?') {
+                pos = this.quantifier(pos, 1);
+            } else {
+                ++pos;
+            }
+        }
+        if (klass) {
+            throw this.error("unclosed character class");
+        }
+        Pattern.compile(this.expr);
+        return this.expr;
+    }
+
+    /**
+     * Skip an escape sequence.
+     * @param pos Position of the backslash
+     * @param klass TRUE if it is inside a class
+     * @return Position after it
+     */
+    private int escape(final int pos, final boolean klass) {
+        if (pos + 1 >= this.expr.length()) {
+            throw this.error("trailing backslash");
+        }
+        final char chr = this.expr.charAt(pos + 1);
+        final int next;
+        if (chr == 'x') {
+            next = this.hex(pos, 2);
+        } else if (chr == 'u') {
+            // @checkstyle MagicNumber (1 line)
+            next = this.hex(pos, 4);
+        } else if (Regex.ESCAPES.indexOf(chr) >= 0
+            || !klass && Regex.OUTSIDE.indexOf(chr) >= 0
+            || !Character.isLetterOrDigit(chr)) {
+            next = pos + 2;
+        } else {
+            throw this.error(String.format("escape \\%c", chr));
+        }
+        return next;
+    }
+
+    /**
+     * Skip an escape sequence with hex digits.
+     * @param pos Position of the backslash
+     * @param digits How many digits must follow
+     * @return Position after it
+     */
+    private int hex(final int pos, final int digits) {
+        final int end = pos + 2 + digits;
+        if (end > this.expr.length()
+            || !Regex.HEX.matcher(this.expr.substring(pos + 2, end))
+                .matches()) {
+            throw this.error(
+                String.format(
+                    "escape \\%c must have %d hex digits",
+                    this.expr.charAt(pos + 1), digits
+                )
+            );
+        }
+        return end;
+    }
+
+    /**
+     * Skip the opening bracket of a class.
+     * @param pos Position of the bracket
+     * @return Position after it
+     */
+    private int open(final int pos) {
+        int next = pos + 1;
+        if (next < this.expr.length() && this.expr.charAt(next) == '^') {
+            ++next;
+        }
+        if (next < this.expr.length() && this.expr.charAt(next) == ']') {
+            throw this.error("empty character class");
+        }
+        return next;
+    }
+
+    /**
+     * Skip a member of a class, or its closing bracket.
+     * @param pos Position of it
+     * @return Position after it
+     */
+    private int member(final int pos) {
+        final char chr = this.expr.charAt(pos);
+        if (chr == '[') {
+            throw this.error("nested character class");
+        }
+        if (chr == '&' && this.expr.startsWith("&&", pos)) {
+            throw this.error("intersection of character classes");
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Skip the opening parenthesis of a group.
+     * @param pos Position of the parenthesis
+     * @return Position after it
+     */
+    private int group(final int pos) {
+        int next = pos + 1;
+        if (next < this.expr.length() && this.expr.charAt(next) == '?') {
+            if (next + 1 >= this.expr.length()
+                || ":=!".indexOf(this.expr.charAt(next + 1)) < 0) {
+                throw this.error("special group");
+            }
+            next += 2;
+        }
+        return next;
+    }
+
+    /**
+     * Length of a quantifier in braces.
+     * @param pos Position of the opening brace
+     * @return Length
+     */
+    private int braces(final int pos) {
+        final Matcher matcher =
+            Regex.BRACES.matcher(this.expr).region(pos, this.expr.length());
+        if (!matcher.lookingAt()) {
+            throw this.error("brace, which is not a quantifier");
+        }
+        return matcher.end() - pos;
+    }
+
+    /**
+     * Skip a quantifier, which may be lazy, but not possessive.
+     * @param pos Position of it
+     * @param len Its length
+     * @return Position after it
+     */
+    private int quantifier(final int pos, final int len) {
+        int next = pos + len;
+        if (next < this.expr.length()) {
+            final char chr = this.expr.charAt(next);
+            if (chr == '+') {
+                throw this.error("possessive quantifier");
+            }
+            if (chr == '?') {
+                ++next;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Make an exception.
+     * @param what What is wrong
+     * @return Exception
+     */
+    private IllegalArgumentException error(final String what) {
+        return new IllegalArgumentException(
+            String.format(
+                "%s in \"%s\", it may mean something else in JavaScript",
+                what, this.expr
+            )
+        );
+    }
+
+}
@@ -0,0 +1,1005 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.log.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.ToString;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Local HTTP proxy, which caches resources fetched by PhantomJS.
+ *
+ * <p>The proxy listens on a local port and keeps successful responses
+ * to GET requests in files in the given directory, evicting the least
+ * recently used ones when their total size exceeds the limit. Point
+ * PhantomJS to it through {@link Launch#proxy(String)}:
+ *
+ * <pre>Relay relay = new Relay(new File("/tmp/cache"), Relay.Mode.CACHE);
+ * try {
+ *   Document dom = new Phandom(html).with(
+ *     new Launch().proxy(relay.address())
+ *   ).dom();
+ * } finally {
+ *   relay.close();
+ * }</pre>
+ *
+ * <p>In {@link Relay.Mode#RECORD} mode every request goes to the
+ * network and its response is saved, in {@link Relay.Mode#REPLAY}
+ * mode nothing goes to the network and requests that are not in the
+ * cache get 504 responses. HTTPS connections are tunneled as is and
+ * are never cached (they are rejected in replay mode).
+ *
+ * <p>Connections are served by a bounded number of threads; when all
+ * of them are busy, new connections are closed right away. Requests
+ * that can't be parsed get 400 responses, connections that stay silent
+ * for longer than a minute are closed.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
+ * @checkstyle ClassFanOutComplexityCheck (500 lines)
+ */
+@ToString(of = { "dir", "mode" })
+@SuppressWarnings("PMD.TooManyMethods")
+public final class Relay implements Closeable {
+
+    /**
+     * Mode of the proxy.
+     */
+    public enum Mode {
+        /**
+         * Serve from cache, fetch and save what is not there.
+         */
+        CACHE,
+        /**
+         * Always fetch and save.
+         */
+        RECORD,
+        /**
+         * Serve from cache only.
+         */
+        REPLAY
+    }
+
+    /**
+     * Default maximum size of the cache, in bytes.
+     */
+    private static final long MAX = 256L * 1024L * 1024L;
+
+    /**
+     * Maximum number of threads, two of them per HTTPS tunnel.
+     */
+    private static final int THREADS = 64;
+
+    /**
+     * Timeout of reading from a socket, in milliseconds.
+     */
+    private static final int TIMEOUT = (int) TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * Status line of a successful tunnel.
+     */
+    private static final String TUNNEL =
+        "HTTP/1.1 200 Connection established\r\n\r\n";
+
+    /**
+     * Headers that are never passed through.
+     */
+    private static final Collection<String> HOP = Arrays.asList(
+        "connection", "proxy-connection", "keep-alive", "transfer-encoding",
+        "content-length", "host", "te", "trailer", "upgrade"
+    );
+
+    /**
+     * Directory with cached responses.
+     */
+    private final transient File dir;
+
+    /**
+     * Mode.
+     */
+    private final transient Relay.Mode mode;
+
+    /**
+     * Maximum total size of cached responses, in bytes.
+     */
+    private final transient long max;
+
+    /**
+     * Server socket.
+     */
+    private final transient ServerSocket server;
+
+    /**
+     * Threads.
+     */
+    private final transient ExecutorService threads;
+
+    /**
+     * Sizes of cached files, by names, least recently used first.
+     */
+    private final transient Map<String, Long> index;
+
+    /**
+     * Total size of cached files, guarded by the index.
+     */
+    private transient long total;
+
+    /**
+     * Total hits.
+     */
+    private final transient AtomicLong hit;
+
+    /**
+     * Total misses.
+     */
+    private final transient AtomicLong miss;
+
+    /**
+     * Total evictions.
+     */
+    private final transient AtomicLong evicted;
+
+    /**
+     * Public ctor.
+     * @param folder Directory with cached responses
+     * @param mde Mode
+     * @throws IOException If fails to start
+     */
+    public Relay(final File folder, final Relay.Mode mde) throws IOException {
+        this(folder, mde, Relay.MAX);
+    }
+
+    /**
+     * Public ctor.
+     * @param folder Directory with cached responses
+     * @param mde Mode
+     * @param bytes Maximum total size of cached responses
+     * @throws IOException If fails to start
+     */
+    public Relay(final File folder, final Relay.Mode mde, final long bytes)
+        throws IOException {
+        FileUtils.forceMkdir(folder);
+        this.dir = folder;
+        this.mode = mde;
+        this.max = bytes;
+        this.hit = new AtomicLong();
+        this.miss = new AtomicLong();
+        this.evicted = new AtomicLong();
+        this.index = new LinkedHashMap<String, Long>(0, 0.75f, true);
+        this.load();
+        this.server = new ServerSocket(
+            0, 0, InetAddress.getByName("127.0.0.1")
+        );
+        this.threads = new ThreadPoolExecutor(
+            0, Relay.THREADS, 1L, TimeUnit.MINUTES,
+            new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "phandom-relay");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+        final Relay relay = this;
+        this.threads.execute(
+            new Runnable() {
+                @Override
+                public void run() {
+                    relay.accept();
+                }
+            }
+        );
+    }
+
+    /**
+     * Address to point PhantomJS to.
+     * @return Host and port, e.g. "127.0.0.1:49152"
+     */
+    public String address() {
+        return String.format("127.0.0.1:%d", this.server.getLocalPort());
+    }
+
+    /**
+     * Total number of requests served from cache.
+     * @return Hits
+     */
+    public long hits() {
+        return this.hit.get();
+    }
+
+    /**
+     * Total number of GET requests that were not in cache.
+     * @return Misses
+     */
+    public long misses() {
+        return this.miss.get();
+    }
+
+    /**
+     * Total number of responses evicted from cache.
+     * @return Evictions
+     */
+    public long evictions() {
+        return this.evicted.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+        this.threads.shutdownNow();
+    }
+
+    /**
+     * Accept connections, until the server socket is closed.
+     */
+    private void accept() {
+        while (!this.server.isClosed()) {
+            final Socket client;
+            try {
+                client = this.server.accept();
+            } catch (final SocketException ex) {
+                break;
+            } catch (final IOException ex) {
+                Logger.warn(this, "failed to accept: %s", ex);
+                continue;
+            }
+            final Relay relay = this;
+            try {
+                this.threads.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                relay.serve(client);
+                            } catch (final IOException ex) {
+                                Logger.debug(
+                                    relay, "connection failed: %s", ex
+                                );
+                            } finally {
+                                Relay.closeQuietly(client);
+                            }
+                        }
+                    }
+                );
+            } catch (final RejectedExecutionException ex) {
+                Logger.warn(this, "too many connections, one is dropped");
+                Relay.closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Serve one connection.
+     * @param client Socket of the client
+     * @throws IOException If fails
+     */
+    private void serve(final Socket client) throws IOException {
+        client.setSoTimeout(Relay.TIMEOUT);
+        final InputStream input =
+            new BufferedInputStream(client.getInputStream());
+        final String line = Relay.line(input);
+        if (line.isEmpty()) {
+            return;
+        }
+        final String[] parts = line.split(" ");
+        final List<String> headers = new ArrayList<String>(0);
+        while (true) {
+            final String header = Relay.line(input);
+            if (header.isEmpty()) {
+                break;
+            }
+            headers.add(header);
+        }
+        final OutputStream output =
+            new BufferedOutputStream(client.getOutputStream());
+        try {
+            if (parts.length != 3) {
+                throw new ProtocolException(
+                    String.format("malformed request line \"%s\"", line)
+                );
+            }
+            if ("CONNECT".equals(parts[0])) {
+                this.tunnel(parts[1], input, output);
+            } else {
+                this.respond(
+                    parts[0], parts[1], headers, Relay.body(input, headers)
+                ).write(output);
+            }
+        } catch (final ProtocolException ex) {
+            Logger.debug(this, "bad request: %s", ex.getMessage());
+            // @checkstyle MagicNumber (1 line)
+            Relay.status(400, "Bad Request").write(output);
+        }
+        output.flush();
+    }
+
+    /**
+     * Make a response.
+     * @param method HTTP method
+     * @param target Absolute URL
+     * @param headers Request headers
+     * @param body Request body
+     * @return Response
+     * @throws IOException If fails
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    private Relay.Reply respond(final String method, final String target,
+        final List<String> headers, final byte[] body) throws IOException {
+        final boolean get = "GET".equals(method);
+        final File file = new File(
+            this.dir,
+            String.format(
+                "%s.http",
+                new Digest(target.getBytes(CharEncoding.UTF_8)).hex()
+            )
+        );
+        final Relay.Reply reply;
+        if (get && this.mode != Relay.Mode.RECORD && file.exists()) {
+            this.hit.incrementAndGet();
+            file.setLastModified(System.currentTimeMillis());
+            synchronized (this.index) {
+                // moves the file to the end of the access order
+                this.index.get(file.getName());
+            }
+            reply = Relay.Reply.load(file);
+        } else if (this.mode == Relay.Mode.REPLAY) {
+            this.miss.incrementAndGet();
+            Logger.info(this, "%s %s is not recorded", method, target);
+            // @checkstyle MagicNumber (1 line)
+            reply = Relay.status(504, "Not Recorded");
+        } else {
+            if (get) {
+                this.miss.incrementAndGet();
+            }
+            reply = Relay.fetch(method, target, headers, body);
+            if (get && reply.cacheable()) {
+                reply.save(file);
+                this.evict(file);
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Index the files already in the directory, least recently used
+     * first, and evict the ones that don't fit.
+     */
+    private void load() {
+        final File[] files = this.dir.listFiles(
+            new FileFilter() {
+                @Override
+                public boolean accept(final File file) {
+                    return file.getName().endsWith(".http");
+                }
+            }
+        );
+        if (files != null) {
+            Arrays.sort(
+                files,
+                new Comparator<File>() {
+                    @Override
+                    public int compare(final File left, final File right) {
+                        return Long.valueOf(left.lastModified())
+                            .compareTo(right.lastModified());
+                    }
+                }
+            );
+            for (final File file : files) {
+                this.index.put(file.getName(), file.length());
+                this.total += file.length();
+            }
+            this.evict(null);
+        }
+    }
+
+    /**
+     * Index the saved file and delete least recently used files,
+     * if there are too many of them.
+     * @param saved The file just saved, or NULL
+     */
+    private void evict(final File saved) {
+        synchronized (this.index) {
+            if (saved != null) {
+                final Long before = this.index.put(
+                    saved.getName(), saved.length()
+                );
+                if (before != null) {
+                    this.total -= before;
+                }
+                this.total += saved.length();
+            }
+            final Iterator<Map.Entry<String, Long>> iter =
+                this.index.entrySet().iterator();
+            while (this.total > this.max && iter.hasNext()) {
+                final Map.Entry<String, Long> ent = iter.next();
+                iter.remove();
+                this.total -= ent.getValue();
+                if (new File(this.dir, ent.getKey()).delete()) {
+                    this.evicted.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tunnel a CONNECT request.
+     * @param target Host and port
+     * @param input Input from client
+     * @param output Output to client
+     * @throws IOException If fails
+     */
+    private void tunnel(final String target, final InputStream input,
+        final OutputStream output) throws IOException {
+        if (this.mode == Relay.Mode.REPLAY) {
+            output.write(
+                "HTTP/1.1 502 Not Recorded\r\nContent-Length: 0\r\n\r\n"
+                    .getBytes(CharEncoding.ISO_8859_1)
+            );
+            return;
+        }
+        final Socket remote = new Socket();
+        try {
+            remote.connect(Relay.address(target), Relay.TIMEOUT);
+            remote.setSoTimeout(Relay.TIMEOUT);
+            output.write(Relay.TUNNEL.getBytes(CharEncoding.ISO_8859_1));
+            output.flush();
+            final InputStream back = remote.getInputStream();
+            try {
+                this.threads.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Relay.pump(back, output);
+                            } catch (final IOException ex) {
+                                Logger.debug(Relay.class, "tunnel: %s", ex);
+                            }
+                        }
+                    }
+                );
+            } catch (final RejectedExecutionException ex) {
+                throw new IOException("too many connections", ex);
+            }
+            Relay.pump(input, remote.getOutputStream());
+        } finally {
+            Relay.closeQuietly(remote);
+        }
+    }
+
+    /**
+     * Fetch from the network.
+     * @param method HTTP method
+     * @param target Absolute URL
+     * @param headers Request headers
+     * @param body Request body
+     * @return Response
+     * @throws IOException If fails
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    private static Relay.Reply fetch(final String method, final String target,
+        final List<String> headers, final byte[] body) throws IOException {
+        final HttpURLConnection conn = HttpURLConnection.class.cast(
+            new URL(target).openConnection(java.net.Proxy.NO_PROXY)
+        );
+        try {
+            conn.setConnectTimeout(Relay.TIMEOUT);
+            conn.setReadTimeout(Relay.TIMEOUT);
+            conn.setInstanceFollowRedirects(false);
+            conn.setRequestMethod(method);
+            for (final String header : headers) {
+                final int colon = header.indexOf(':');
+                final String name = header.substring(0, colon).trim();
+                if (!Relay.HOP.contains(name.toLowerCase(Locale.ENGLISH))) {
+                    conn.addRequestProperty(
+                        name, header.substring(colon + 1).trim()
+                    );
+                }
+            }
+            if (body.length > 0) {
+                conn.setDoOutput(true);
+                final OutputStream output = conn.getOutputStream();
+                try {
+                    output.write(body);
+                } finally {
+                    output.close();
+                }
+            }
+            final int status = conn.getResponseCode();
+            InputStream stream = conn.getErrorStream();
+            if (stream == null) {
+                try {
+                    stream = conn.getInputStream();
+                } catch (final IOException ex) {
+                    stream = null;
+                }
+            }
+            final byte[] content;
+            if (stream == null) {
+                content = new byte[0];
+            } else {
+                try {
+                    content = IOUtils.toByteArray(stream);
+                } finally {
+                    stream.close();
+                }
+            }
+            final List<String> back = new ArrayList<String>(0);
+            for (final Map.Entry<String, List<String>> header
+                : conn.getHeaderFields().entrySet()) {
+                if (header.getKey() == null || Relay.HOP.contains(
+                    header.getKey().toLowerCase(Locale.ENGLISH)
+                )) {
+                    continue;
+                }
+                for (final String value : header.getValue()) {
+                    back.add(String.format("%s: %s", header.getKey(), value));
+                }
+            }
+            String reason = conn.getResponseMessage();
+            if (reason == null) {
+                reason = "";
+            }
+            final Relay.Reply reply;
+            if ("HEAD".equals(method)) {
+                reply = new Relay.Reply(
+                    status, reason, back, content, Relay.length(conn)
+                );
+            } else {
+                reply = new Relay.Reply(status, reason, back, content);
+            }
+            return reply;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Response without headers and body.
+     * @param code Status
+     * @param phrase Reason phrase
+     * @return Response
+     */
+    private static Relay.Reply status(final int code, final String phrase) {
+        return new Relay.Reply(
+            code, phrase, new ArrayList<String>(0), new byte[0]
+        );
+    }
+
+    /**
+     * Address of a CONNECT target.
+     * @param target Host and port
+     * @return Address
+     * @throws ProtocolException If the target is malformed
+     */
+    private static InetSocketAddress address(final String target)
+        throws ProtocolException {
+        final int colon = target.lastIndexOf(':');
+        try {
+            return new InetSocketAddress(
+                target.substring(0, colon),
+                Integer.parseInt(target.substring(colon + 1))
+            );
+        } catch (final IndexOutOfBoundsException ex) {
+            throw Relay.malformed("CONNECT target", target, ex);
+        } catch (final IllegalArgumentException ex) {
+            throw Relay.malformed("CONNECT target", target, ex);
+        }
+    }
+
+    /**
+     * Read the body of a request, which is either chunked or has
+     * the length declared in its headers.
+     * @param input Input from client
+     * @param headers Request headers
+     * @return Body
+     * @throws IOException If fails
+     */
+    private static byte[] body(final InputStream input,
+        final List<String> headers) throws IOException {
+        long length = 0L;
+        boolean chunked = false;
+        for (final String header : headers) {
+            final int colon = header.indexOf(':');
+            if (colon < 0) {
+                throw Relay.malformed("header", header, null);
+            }
+            final String name = header.substring(0, colon).trim()
+                .toLowerCase(Locale.ENGLISH);
+            final String value = header.substring(colon + 1).trim();
+            if ("content-length".equals(name)) {
+                // @checkstyle MagicNumber (1 line)
+                length = Relay.number(value, 10);
+            } else if ("transfer-encoding".equals(name)) {
+                chunked = !"identity".equalsIgnoreCase(value);
+            }
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (chunked) {
+            while (true) {
+                final String line = Relay.line(input);
+                final int semi = line.indexOf(';');
+                final long size;
+                // @checkstyle MagicNumber (5 lines)
+                if (semi < 0) {
+                    size = Relay.number(line.trim(), 16);
+                } else {
+                    size = Relay.number(line.substring(0, semi).trim(), 16);
+                }
+                if (size == 0L) {
+                    break;
+                }
+                Relay.copy(input, body, size);
+                Relay.line(input);
+            }
+            while (!Relay.line(input).isEmpty()) {
+                Logger.debug(Relay.class, "trailer of a chunked body ignored");
+            }
+        } else {
+            Relay.copy(input, body, length);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Copy exactly that many bytes.
+     * @param input Input
+     * @param output Output
+     * @param size How many bytes to copy
+     * @throws IOException If fails
+     */
+    private static void copy(final InputStream input,
+        final OutputStream output, final long size) throws IOException {
+        if (IOUtils.copyLarge(input, output, 0L, size) != size) {
+            throw new ProtocolException(
+                String.format("body is shorter than %d bytes", size)
+            );
+        }
+    }
+
+    /**
+     * Parse a non-negative number from a request.
+     * @param text The text
+     * @param radix Radix
+     * @return The number
+     * @throws ProtocolException If it's not a number
+     */
+    private static long number(final String text, final int radix)
+        throws ProtocolException {
+        final long num;
+        try {
+            num = Long.parseLong(text, radix);
+        } catch (final NumberFormatException ex) {
+            throw Relay.malformed("number", text, ex);
+        }
+        if (num < 0L) {
+            throw Relay.malformed("number", text, null);
+        }
+        return num;
+    }
+
+    /**
+     * Exception about a malformed part of a request.
+     * @param what What is malformed
+     * @param text The text of it
+     * @param cause Cause, or NULL
+     * @return Exception
+     */
+    private static ProtocolException malformed(final String what,
+        final String text, final Throwable cause) {
+        final ProtocolException ex = new ProtocolException(
+            String.format("malformed %s \"%s\"", what, text)
+        );
+        ex.initCause(cause);
+        return ex;
+    }
+
+    /**
+     * Content length declared by the server.
+     * @param conn Connection
+     * @return Length, or -1 if it is unknown
+     */
+    private static long length(final HttpURLConnection conn) {
+        final String header = conn.getHeaderField("Content-Length");
+        long length = -1L;
+        if (header != null) {
+            try {
+                length = Long.parseLong(header.trim());
+            } catch (final NumberFormatException ex) {
+                length = -1L;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Copy until the end of input and close output.
+     * @param input Input
+     * @param output Output
+     * @throws IOException If fails
+     */
+    private static void pump(final InputStream input,
+        final OutputStream output) throws IOException {
+        try {
+            // @checkstyle MagicNumber (1 line)
+            final byte[] buf = new byte[4096];
+            while (true) {
+                final int len = input.read(buf);
+                if (len < 0) {
+                    break;
+                }
+                output.write(buf, 0, len);
+                output.flush();
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Read one line of HTTP head.
+     * @param input Input
+     * @return Line without CRLF, empty at the end of stream
+     * @throws IOException If fails
+     */
+    private static String line(final InputStream input) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            final int chr = input.read();
+            if (chr < 0 || chr == '\n') {
+                break;
+            }
+            if (chr != '\r') {
+                line.write(chr);
+            }
+        }
+        return line.toString(CharEncoding.ISO_8859_1);
+    }
+
+    /**
+     * Close the socket quietly.
+     * @param socket The socket
+     */
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException ex) {
+            Logger.debug(Relay.class, "failed to close: %s", ex);
+        }
+    }
+
+    /**
+     * HTTP response.
+     */
+    private static final class Reply {
+        /**
+         * Status.
+         */
+        private final transient int status;
+        /**
+         * Reason phrase.
+         */
+        private final transient String reason;
+        /**
+         * Headers, "Name: value".
+         */
+        private final transient List<String> headers;
+        /**
+         * Body.
+         */
+        private final transient byte[] body;
+        /**
+         * Content length, or -1 if it is unknown.
+         */
+        private final transient long length;
+        /**
+         * Ctor.
+         * @param code Status
+         * @param phrase Reason phrase
+         * @param hdrs Headers
+         * @param content Body
+         * @checkstyle ParameterNumberCheck (3 lines)
+         */
+        Reply(final int code, final String phrase, final List<String> hdrs,
+            final byte[] content) {
+            this(code, phrase, hdrs, content, content.length);
+        }
+        /**
+         * Ctor of a response without body, to a HEAD request.
+         * @param code Status
+         * @param phrase Reason phrase
+         * @param hdrs Headers
+         * @param content Body, which is empty
+         * @param size Content length, or -1 if it is unknown
+         * @checkstyle ParameterNumberCheck (3 lines)
+         */
+        Reply(final int code, final String phrase, final List<String> hdrs,
+            final byte[] content, final long size) {
+            this.status = code;
+            this.reason = phrase;
+            this.headers = hdrs;
+            this.body = content;
+            this.length = size;
+        }
+        /**
+         * Load it from file.
+         * @param file The file
+         * @return Response
+         * @throws IOException If fails
+         */
+        public static Relay.Reply load(final File file) throws IOException {
+            final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))
+            );
+            try {
+                final int code = input.readInt();
+                final String phrase = Relay.Reply.read(input);
+                final int total = input.readInt();
+                final List<String> hdrs = new ArrayList<String>(total);
+                for (int idx = 0; idx < total; ++idx) {
+                    hdrs.add(Relay.Reply.read(input));
+                }
+                final byte[] content = new byte[input.readInt()];
+                input.readFully(content);
+                return new Relay.Reply(code, phrase, hdrs, content);
+            } finally {
+                input.close();
+            }
+        }
+        /**
+         * Can it be cached?
+         * @return TRUE if it can
+         */
+        public boolean cacheable() {
+            // @checkstyle MagicNumber (1 line)
+            return this.status == 200;
+        }
+        /**
+         * Save it to file, atomically.
+         * @param file The file
+         * @throws IOException If fails
+         */
+        public void save(final File file) throws IOException {
+            final File tmp = File.createTempFile(
+                Temp.PREFIX, ".tmp", file.getParentFile()
+            );
+            final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp))
+            );
+            try {
+                output.writeInt(this.status);
+                Relay.Reply.write(output, this.reason);
+                output.writeInt(this.headers.size());
+                for (final String header : this.headers) {
+                    Relay.Reply.write(output, header);
+                }
+                output.writeInt(this.body.length);
+                output.write(this.body);
+            } finally {
+                output.close();
+            }
+            if (!tmp.renameTo(file)) {
+                FileUtils.deleteQuietly(tmp);
+            }
+        }
+        /**
+         * Write it to the client.
+         * @param output Output to client
+         * @throws IOException If fails
+         */
+        public void write(final OutputStream output) throws IOException {
+            final StringBuilder head = new StringBuilder(0).append(
+                String.format("HTTP/1.1 %d %s\r\n", this.status, this.reason)
+            );
+            for (final String header : this.headers) {
+                head.append(header).append("\r\n");
+            }
+            if (this.length >= 0L) {
+                head.append(
+                    String.format("Content-Length: %d\r\n", this.length)
+                );
+            }
+            head.append("Connection: close\r\n\r\n");
+            output.write(head.toString().getBytes(CharEncoding.ISO_8859_1));
+            output.write(this.body);
+        }
+        /**
+         * Read a text saved by {@link #write(DataOutputStream,String)}.
+         * @param input Input
+         * @return Text
+         * @throws IOException If fails
+         */
+        private static String read(final DataInputStream input)
+            throws IOException {
+            final byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return new String(bytes, CharEncoding.UTF_8);
+        }
+        /**
+         * Save a text of any length, unlike
+         * {@link DataOutputStream#writeUTF(String)}, which fails
+         * on texts longer than 64Kb.
+         * @param output Output
+         * @param text Text
+         * @throws IOException If fails
+         */
+        private static void write(final DataOutputStream output,
+            final String text) throws IOException {
+            final byte[] bytes = text.getBytes(CharEncoding.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Report about one render, delivered to {@link Listener}.
+ *
+ * <p>Phases are reported in milliseconds, in the order they
+ * happened; some of them are measured in Java, others inside
+ * PhantomJS by {@code dom.js}:
+ *
+ * <ul>
+ *  <li>"wait": waiting for a free worker in {@link Pool};
+ *  <li>"spawn": starting a phantomjs process, if it was started;
+ *  <li>"load": loading the page and running its scripts;
+ *  <li>"ready": waiting for {@link Ready} condition;
+ *  <li>"serialize": serializing DOM to XHTML;
+ *  <li>"output": writing XHTML to stdout;
+ *  <li>"parse": reading XHTML from {@link Engine#stream(Page, Options)}
+ *   until the stream is closed, e.g. parsing it into DOM;
+ *  <li>"overhead": the rest, e.g. start of PhantomJS and pipes;
+ *  <li>"total": the entire render, as seen by the engine.
+ * </ul>
+ *
+ * <p>Phases that didn't happen are absent, for example "serialize"
+ * after a timeout in "load", or "parse" when the render failed.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString
+@EqualsAndHashCode
+public final class Report {
+
+    /**
+     * Phases and their durations in milliseconds.
+     */
+    private final transient Map<String, Long> times;
+
+    /**
+     * Counters, e.g. "bytes" or "loaded".
+     */
+    private final transient Map<String, Long> counts;
+
+    /**
+     * Exit code.
+     */
+    private final transient int status;
+
+    /**
+     * Ctor.
+     * @param phases Phases and their durations in milliseconds
+     * @param counters Counters
+     * @param code Status code
+     */
+    Report(final Map<String, Long> phases, final Map<String, Long> counters,
+        final int code) {
+        this.times = Collections.unmodifiableMap(
+            new LinkedHashMap<String, Long>(phases)
+        );
+        this.counts = Collections.unmodifiableMap(
+            new LinkedHashMap<String, Long>(counters)
+        );
+        this.status = code;
+    }
+
+    /**
+     * Names of phases that happened.
+     * @return Names, in the order they happened
+     */
+    public Collection<String> phases() {
+        return this.times.keySet();
+    }
+
+    /**
+     * Duration of the phase.
+     * @param phase Name of the phase, e.g. "load"
+     * @return Milliseconds, zero if there was no such phase
+     */
+    public long msec(final String phase) {
+        return Report.get(this.times, phase, 0L);
+    }
+
+    /**
+     * Size of XHTML produced by PhantomJS.
+     * @return Bytes
+     */
+    public long bytes() {
+        return Report.get(this.counts, "bytes", 0L);
+    }
+
+    /**
+     * Resources loaded by the page.
+     * @return Total number of them
+     */
+    public long loaded() {
+        return Report.get(this.counts, "loaded", 0L);
+    }
+
+    /**
+     * Resources blocked by filters, see {@link Options#deny(Filter)}.
+     * @return Total number of them
+     */
+    public long blocked() {
+        return Report.get(this.counts, "blocked", 0L);
+    }
+
+    /**
+     * Status code of rendering: zero on success, three on timeout,
+     * other positive codes on failures of PhantomJS.
+     * @return Status code, or -1 if it is unknown, e.g. when the
+     *  process crashed
+     */
+    public int code() {
+        return this.status;
+    }
+
+    /**
+     * Idle workers in the pool, when the render started.
+     * @return Total number of them, or -1 if there was no pool
+     */
+    public long idle() {
+        return Report.get(this.counts, "idle", -1L);
+    }
+
+    /**
+     * Threads waiting for a worker in the pool, when the render started.
+     * @return Total number of them, or -1 if there was no pool
+     */
+    public long queued() {
+        return Report.get(this.counts, "queued", -1L);
+    }
+
+    /**
+     * Get value from the map, or default.
+     * @param map The map
+     * @param key The key
+     * @param def Default value
+     * @return Value
+     */
+    private static long get(final Map<String, Long> map, final String key,
+        final long def) {
+        final Long value = map.get(key);
+        final long result;
+        if (value == null) {
+            result = def;
+        } else {
+            result = value;
+        }
+        return result;
+    }
+
+}
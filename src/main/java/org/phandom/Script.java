@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The {@code dom.js} script, extracted from classpath to a file.
+ *
+ * <p>The script is extracted only once per JVM, to a file named after
+ * the digest of its content, in the temporary directory (see
+ * {@link Temp#dir()}). The file is shared by all processes and never
+ * deleted, since its name changes together with its content. If the file
+ * disappears (for example, it is removed by a cleaner of the temporary
+ * directory), it is extracted again.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Script {
+
+    /**
+     * Name of the resource.
+     */
+    private static final String NAME = "dom.js";
+
+    /**
+     * Extracted file, or NULL if not extracted yet.
+     */
+    private static final AtomicReference<File> FILE =
+        new AtomicReference<File>();
+
+    /**
+     * Digest of the content, or NULL if not calculated yet.
+     */
+    private static final AtomicReference<String> DIGEST =
+        new AtomicReference<String>();
+
+    /**
+     * Utility class.
+     */
+    private Script() {
+        // intentionally empty
+    }
+
+    /**
+     * Get the file with the script.
+     * @return File
+     * @throws IOException If fails
+     */
+    public static File file() throws IOException {
+        File file = Script.FILE.get();
+        if (file == null || !file.exists()) {
+            synchronized (Script.FILE) {
+                file = Script.FILE.get();
+                if (file == null || !file.exists()) {
+                    file = Script.extract();
+                    Script.FILE.set(file);
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Digest of the script, which changes together with its content.
+     * @return Hex digest
+     * @throws IOException If fails
+     */
+    public static String digest() throws IOException {
+        String hex = Script.DIGEST.get();
+        if (hex == null) {
+            hex = new Digest(Script.content()).hex();
+            Script.DIGEST.set(hex);
+        }
+        return hex;
+    }
+
+    /**
+     * Extract the script to a file.
+     * @return File
+     * @throws IOException If fails
+     */
+    private static File extract() throws IOException {
+        final byte[] content = Script.content();
+        final File dir = Temp.dir();
+        final File file = new File(
+            dir, String.format("%s%s.js", Temp.PREFIX, Script.digest())
+        );
+        if (!file.exists() || file.length() != content.length) {
+            final File tmp = File.createTempFile(Temp.PREFIX, ".tmp", dir);
+            FileUtils.writeByteArrayToFile(tmp, content);
+            if (!tmp.renameTo(file) && !file.exists()) {
+                FileUtils.deleteQuietly(tmp);
+                throw new IOException(
+                    String.format("failed to extract %s", file)
+                );
+            }
+            FileUtils.deleteQuietly(tmp);
+        }
+        return file;
+    }
+
+    /**
+     * Read the script from classpath.
+     * @return Content
+     * @throws IOException If fails
+     */
+    private static byte[] content() throws IOException {
+        final InputStream src = Script.class.getResourceAsStream(Script.NAME);
+        try {
+            return IOUtils.toByteArray(src);
+        } finally {
+            src.close();
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import lombok.ToString;
+import org.w3c.dom.Document;
+
+/**
+ * Live page in a PhantomJS process, loaded once and inspected many
+ * times, see {@link Phandom#session()}.
+ *
+ * <p>The page is loaded (and waited for, according to its
+ * {@link Ready} condition) when the session is created, and stays
+ * open until it is closed. Every method sends one command to the
+ * process, without reloading the page:
+ *
+ * <pre>Session session = new Phandom(html).session();
+ * try {
+ *   session.type("#name", "Jeff");
+ *   session.click("#submit");
+ *   session.ready(new Ready.Selector("#greeting"));
+ *   String text = session.eval("document.title");
+ *   Document dom = session.dom();
+ * } finally {
+ *   session.close();
+ * }</pre>
+ *
+ * <p>Timeout of options applies to loading and to every command;
+ * without a timeout, waiting for a condition in {@link #ready(Ready)}
+ * is limited to one minute, see {@link Options}. After a timeout or
+ * a crash of the process the session is broken and every next command
+ * fails.
+ *
+ * <p>The class is thread-safe, commands are executed one at a time.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString(of = "worker")
+public final class Session implements Closeable {
+
+    /**
+     * The process.
+     */
+    private final transient Worker worker;
+
+    /**
+     * Timeout of every command, in milliseconds.
+     */
+    private final transient long msec;
+
+    /**
+     * Ctor.
+     * @param page The page to load
+     * @param options Options of rendering
+     * @param launch Options of the process
+     * @throws IOException If fails to load
+     */
+    Session(final Page page, final Options options, final Launch launch)
+        throws IOException {
+        this.worker = new Worker(Phandom.phantomjs(launch, "--session"));
+        this.msec = options.timeout();
+        boolean loaded = false;
+        try {
+            this.worker.render(page, options, new Probe()).close();
+            loaded = true;
+        } finally {
+            if (!loaded) {
+                this.worker.close();
+            }
+        }
+    }
+
+    /**
+     * Serialize the page, as it is now.
+     * @return DOM
+     * @throws IOException If fails
+     */
+    public Document dom() throws IOException {
+        return Phandom.parse(this.call("\"cmd\":\"dom\""));
+    }
+
+    /**
+     * Get only the nodes selected by the query, see {@link Query}.
+     * @param query The query
+     * @return DOM with matching nodes, under {@code <matches>}
+     * @throws IOException If fails
+     */
+    public Document query(final Query query) throws IOException {
+        return Phandom.parse(
+            this.call(
+                String.format("\"cmd\":\"query\",\"query\":%s", query.json())
+            )
+        );
+    }
+
+    /**
+     * Evaluate a JavaScript expression inside the page.
+     * @param script Expression, e.g. "document.title"
+     * @return Its value as a string, empty if it is null or undefined
+     * @throws IOException If fails, e.g. when the expression throws
+     */
+    public String eval(final String script) throws IOException {
+        return this.call(
+            String.format("\"cmd\":\"eval\",\"script\":%s", new Json(script))
+        );
+    }
+
+    /**
+     * Click the first element matching the CSS selector.
+     * @param css CSS selector
+     * @throws IOException If fails, e.g. when nothing matches
+     */
+    public void click(final String css) throws IOException {
+        this.call(String.format("\"cmd\":\"click\",\"css\":%s", new Json(css)));
+    }
+
+    /**
+     * Set the value of the first element matching the CSS selector,
+     * firing "input" and "change" events.
+     * @param css CSS selector
+     * @param text The value
+     * @throws IOException If fails, e.g. when nothing matches
+     */
+    public void type(final String css, final String text) throws IOException {
+        this.call(
+            String.format(
+                "\"cmd\":\"type\",\"css\":%s,\"text\":%s",
+                new Json(css), new Json(text)
+            )
+        );
+    }
+
+    /**
+     * Wait until the condition is met, e.g. after a click.
+     * @param ready The condition
+     * @throws IOException If fails, e.g. on timeout
+     */
+    public void ready(final Ready ready) throws IOException {
+        final long limit = Options.limit(this.msec, ready.json());
+        this.call(
+            String.format(
+                "\"cmd\":\"ready\",\"ready\":%s,\"timeout\":%d",
+                ready.json(), limit
+            ),
+            limit
+        );
+    }
+
+    @Override
+    public void close() {
+        this.worker.close();
+    }
+
+    /**
+     * Send a command.
+     * @param fields Fields of the command, without braces and ID
+     * @return Result
+     * @throws IOException If fails
+     */
+    private String call(final String fields) throws IOException {
+        return this.call(fields, this.msec);
+    }
+
+    /**
+     * Send a command, with a timeout.
+     * @param fields Fields of the command, without braces and ID
+     * @param limit Timeout in milliseconds, or zero if no timeout
+     * @return Result
+     * @throws IOException If fails
+     */
+    private String call(final String fields, final long limit)
+        throws IOException {
+        synchronized (this.worker) {
+            if (!this.worker.healthy()) {
+                throw new IllegalStateException(
+                    "the session is broken or closed"
+                );
+            }
+            return this.worker.call(fields, limit, new Probe());
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Buffer of rendered output, which spills to disk when it gets big.
+ *
+ * <p>Bytes are kept in memory until there are more of them than
+ * {@code phandom.spill} system property says (16Mb by default), then
+ * they all move to a {@link Temp} file and the rest goes there too.
+ * The content is read back by {@link #input()}, from memory without
+ * a copy, or from the file mapped into memory. Closing that stream
+ * closes the buffer and deletes the file. When the content has to be
+ * read more than once, use {@link #share()} and close the buffer
+ * after all of them. The buffer may also be taken away from the
+ * stream, see {@link #detach(InputStream)}.
+ *
+ * <p>The class is NOT thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString(of = { "limit", "size" })
+final class Spill extends OutputStream {
+
+    /**
+     * System property with the limit, in bytes.
+     */
+    private static final String PROPERTY = "phandom.spill";
+
+    /**
+     * Default limit, in bytes.
+     */
+    private static final int LIMIT = 1 << 24;
+
+    /**
+     * Maximum number of bytes kept in memory.
+     */
+    private final transient int limit;
+
+    /**
+     * Bytes in memory, or NULL when they are spilled.
+     */
+    private transient Spill.Memory memory;
+
+    /**
+     * Temp file, or NULL when bytes are in memory.
+     */
+    private transient Temp temp;
+
+    /**
+     * Stream to the temp file, or NULL.
+     */
+    private transient OutputStream file;
+
+    /**
+     * Total bytes written.
+     */
+    private transient long size;
+
+    /**
+     * Public ctor.
+     */
+    Spill() {
+        this(Integer.getInteger(Spill.PROPERTY, Spill.LIMIT));
+    }
+
+    /**
+     * Public ctor.
+     * @param max Maximum number of bytes to keep in memory
+     */
+    Spill(final int max) {
+        super();
+        if (max < 0) {
+            throw new IllegalArgumentException(
+                "spill limit can't be negative"
+            );
+        }
+        this.limit = max;
+        this.memory = new Spill.Memory();
+    }
+
+    @Override
+    public void write(final int chr) throws IOException {
+        this.write(new byte[] {(byte) chr}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int off, final int len)
+        throws IOException {
+        if (this.memory != null && this.size + len > this.limit) {
+            this.spill();
+        }
+        if (this.memory == null) {
+            this.file.write(bytes, off, len);
+        } else {
+            this.memory.write(bytes, off, len);
+        }
+        this.size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.file != null) {
+            this.file.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(this.file);
+        if (this.temp != null) {
+            this.temp.close();
+        }
+        this.memory = null;
+    }
+
+    /**
+     * Take the buffer away from a stream made by {@link #input()},
+     * or from a stream that wraps it, so that closing the stream
+     * doesn't close the buffer any more.
+     * @param input The stream
+     * @return The buffer, or NULL if the stream doesn't own one
+     */
+    public static Spill detach(final InputStream input) {
+        Spill spill = null;
+        if (input instanceof Spill.Owner) {
+            spill = Spill.Owner.class.cast(input).detach();
+        }
+        return spill;
+    }
+
+    /**
+     * Total number of bytes written.
+     * @return Bytes
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Is it on disk?
+     * @return TRUE if the content is in a file
+     */
+    public boolean spilled() {
+        return this.temp != null;
+    }
+
+    /**
+     * Read everything written so far.
+     *
+     * <p>The stream has to be closed, which closes the buffer too.
+     *
+     * @return Stream of bytes
+     * @throws IOException If fails
+     */
+    public InputStream input() throws IOException {
+        return new Spill.Input(this.share(), this);
+    }
+
+    /**
+     * Read everything written so far, without closing the buffer.
+     *
+     * <p>When nothing is written any more, many threads may read
+     * the content at the same time, each one with its own stream.
+     *
+     * @return Stream of bytes
+     * @throws IOException If fails
+     */
+    public InputStream share() throws IOException {
+        final InputStream input;
+        if (this.temp == null) {
+            input = this.memory.input();
+        } else {
+            this.file.close();
+            if (this.size > Integer.MAX_VALUE) {
+                input = new BufferedInputStream(
+                    new FileInputStream(this.temp.file())
+                );
+            } else {
+                input = new Spill.Mapped(this.map());
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Move bytes from memory to a new temp file.
+     * @throws IOException If fails
+     */
+    private void spill() throws IOException {
+        this.temp = new Temp(new ByteArrayInputStream(new byte[0]), ".xml");
+        this.file = new FileOutputStream(this.temp.file());
+        this.memory.writeTo(this.file);
+        this.memory = null;
+    }
+
+    /**
+     * Map the temp file into memory.
+     * @return Buffer
+     * @throws IOException If fails
+     */
+    private ByteBuffer map() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(
+            this.temp.file(), "r"
+        );
+        try {
+            return raf.getChannel().map(
+                FileChannel.MapMode.READ_ONLY, 0L, this.size
+            );
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Stream that owns a buffer, which it closes when it is closed.
+     */
+    interface Owner {
+        /**
+         * Stop owning the buffer.
+         * @return The buffer, or NULL if it is closed or detached
+         */
+        Spill detach();
+    }
+
+    /**
+     * Stream of the content, which closes the buffer.
+     */
+    private static final class Input extends FilterInputStream
+        implements Spill.Owner {
+        /**
+         * The buffer, or NULL when it is closed or detached.
+         */
+        private final transient AtomicReference<Spill> spill;
+        /**
+         * Ctor.
+         * @param input Stream of the content
+         * @param buffer The buffer
+         */
+        Input(final InputStream input, final Spill buffer) {
+            super(input);
+            this.spill = new AtomicReference<Spill>(buffer);
+        }
+        @Override
+        public Spill detach() {
+            return this.spill.getAndSet(null);
+        }
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                final Spill buffer = this.spill.getAndSet(null);
+                if (buffer != null) {
+                    buffer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes in memory, readable without a copy.
+     */
+    private static final class Memory extends ByteArrayOutputStream {
+        /**
+         * Read them.
+         * @return Stream
+         */
+        public InputStream input() {
+            return new ByteArrayInputStream(this.buf, 0, this.count);
+        }
+    }
+
+    /**
+     * Stream of bytes from a buffer.
+     */
+    private static final class Mapped extends InputStream {
+        /**
+         * The buffer.
+         */
+        private final transient ByteBuffer buffer;
+        /**
+         * Ctor.
+         * @param buf The buffer
+         */
+        Mapped(final ByteBuffer buf) {
+            super();
+            this.buffer = buf;
+        }
+        @Override
+        public int read() {
+            final int chr;
+            if (this.buffer.hasRemaining()) {
+                // @checkstyle MagicNumber (1 line)
+                chr = this.buffer.get() & 0xff;
+            } else {
+                chr = -1;
+            }
+            return chr;
+        }
+        @Override
+        public int read(final byte[] bytes, final int off, final int len) {
+            final int done;
+            if (len == 0) {
+                done = 0;
+            } else if (this.buffer.hasRemaining()) {
+                done = Math.min(len, this.buffer.remaining());
+                this.buffer.get(bytes, off, done);
+            } else {
+                done = -1;
+            }
+            return done;
+        }
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+
+}
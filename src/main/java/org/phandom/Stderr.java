@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.log.Logger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Logger of stderr of a phantomjs process, running in a thread.
+ *
+ * <p>{@code dom.js} writes diagnostic records in lines like
+ * {@code "15 E onError: ReferenceError"}, where the letter is the kind
+ * of the record: errors (E) are logged as warnings, info records (I)
+ * in DEBUG and debug records (D) in TRACE. Records that are not
+ * enabled in the logger are not produced by {@code dom.js} at all,
+ * see {@link #level()}. Phase records (P) are always produced,
+ * they track the current phase of rendering, as well as a record
+ * with statistics of the page (M), see {@link Probe#stats(String)}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Stderr implements Runnable {
+
+    /**
+     * Pattern of a record.
+     */
+    private static final Pattern RECORD =
+        Pattern.compile("(\\d+) ([EIDPM]) (.*)");
+
+    /**
+     * How long to wait for the end of stderr, in msec.
+     */
+    private static final long WAIT = 1000L;
+
+    /**
+     * The process.
+     */
+    private final transient Process process;
+
+    /**
+     * Current phase.
+     */
+    private final transient AtomicReference<String> stage;
+
+    /**
+     * Statistics of the last page.
+     */
+    private final transient AtomicReference<String> stats;
+
+    /**
+     * The thread.
+     */
+    private final transient Thread thread;
+
+    /**
+     * Ctor.
+     * @param proc The process
+     */
+    Stderr(final Process proc) {
+        this.process = proc;
+        this.stage = new AtomicReference<String>("start");
+        this.stats = new AtomicReference<String>("");
+        this.thread = new Thread(this, "phandom-stderr");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start logging in background.
+     */
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Current phase of rendering.
+     *
+     * <p>Call it when the process is finished, to get its last phase.
+     * The method waits for the rest of stderr to be logged (but not
+     * longer than a second).
+     *
+     * @return Phase, e.g. "load"
+     */
+    public String phase() {
+        this.finish();
+        return this.stage.get();
+    }
+
+    /**
+     * Statistics of the last page, reported by {@code dom.js}.
+     *
+     * <p>Call it when the process is finished, like {@link #phase()}.
+     *
+     * @return Statistics, e.g. "load=120 serialize=8 loaded=4 blocked=0",
+     *  or empty if they were not reported
+     */
+    public String stats() {
+        this.finish();
+        return this.stats.get();
+    }
+
+    /**
+     * Level of diagnostics to request from {@code dom.js}, according
+     * to the logger or to {@code phandom.log} system property, if it
+     * is set.
+     * @return Level, "error", "info" or "debug"
+     */
+    public static String level() {
+        String level = System.getProperty("phandom.log");
+        if (level == null) {
+            if (Logger.isTraceEnabled(Stderr.class)) {
+                level = "debug";
+            } else if (Logger.isDebugEnabled(Stderr.class)) {
+                level = "info";
+            } else {
+                level = "error";
+            }
+        }
+        return level;
+    }
+
+    @Override
+    public void run() {
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(this.process.getErrorStream())
+        );
+        try {
+            while (true) {
+                final String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                this.log(line);
+            }
+        } catch (final IOException ex) {
+            Logger.debug(Stderr.class, "stderr is closed: %s", ex);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Wait for the rest of stderr to be logged, but not longer
+     * than a second.
+     */
+    private void finish() {
+        try {
+            this.thread.join(Stderr.WAIT);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Log one line of stderr.
+     * @param line The line
+     */
+    private void log(final String line) {
+        final Matcher matcher = Stderr.RECORD.matcher(line);
+        if (matcher.matches()) {
+            final char kind = matcher.group(2).charAt(0);
+            final String text = matcher.group(3);
+            if (kind == 'E') {
+                Logger.warn(Stderr.class, "%s", text);
+            } else if (kind == 'I') {
+                Logger.debug(Stderr.class, "%s", text);
+            } else if (kind == 'D') {
+                Logger.trace(Stderr.class, "%s", text);
+            } else if (kind == 'M') {
+                this.stats.set(text);
+                Logger.trace(Stderr.class, "%s", text);
+            } else {
+                this.stage.set(text);
+                Logger.trace(Stderr.class, "phase=%s", text);
+            }
+        } else {
+            Logger.warn(Stderr.class, "%s", line);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.jcabi.log.Logger;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeper of orphan temporary files.
+ *
+ * <p>Keeps track of the files created by this JVM, see {@link Temp},
+ * and deletes the ones that were never closed: as soon as the object
+ * that owns a file is garbage collected or, for files given away to
+ * other processes, when they get older than an hour. Files that are
+ * still there when the JVM exits are deleted by a shutdown hook.
+ * Files of other JVMs are never touched, even in a shared directory.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Sweep implements Runnable {
+
+    /**
+     * Default age of files given away, in minutes.
+     */
+    private static final long AGE = 60L;
+
+    /**
+     * Default delay between sweeps, in seconds.
+     */
+    private static final long DELAY = 30L;
+
+    /**
+     * Files of this JVM, by their paths.
+     */
+    private static final ConcurrentMap<String, Sweep.Owner> FILES =
+        new ConcurrentHashMap<String, Sweep.Owner>(0);
+
+    /**
+     * Scheduler of sweeps.
+     */
+    private static final ScheduledExecutorService SERVICE =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "phandom-sweep");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+
+    static {
+        Sweep.SERVICE.scheduleWithFixedDelay(
+            new Sweep(TimeUnit.MINUTES.toMillis(Sweep.AGE)),
+            Sweep.DELAY, Sweep.DELAY, TimeUnit.SECONDS
+        );
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(new Sweep(-1L), "phandom-sweep-exit")
+        );
+    }
+
+    /**
+     * Age of files given away, in milliseconds, or negative to delete
+     * all files.
+     */
+    private final transient long age;
+
+    /**
+     * Ctor.
+     * @param msec Age of files given away, in milliseconds, or negative
+     *  to delete all files
+     */
+    Sweep(final long msec) {
+        this.age = msec;
+    }
+
+    /**
+     * Track the file until it is closed or its owner is gone.
+     * @param file The file
+     * @param owner The owner
+     */
+    public static void track(final File file, final Object owner) {
+        Sweep.FILES.put(file.getAbsolutePath(), new Sweep.Owner(owner));
+    }
+
+    /**
+     * Track the file, which was given away to another process, until
+     * it is deleted or gets old.
+     * @param file The file
+     */
+    public static void release(final File file) {
+        Sweep.track(file, null);
+    }
+
+    /**
+     * Stop tracking the file, since it is deleted.
+     * @param file The file
+     */
+    public static void forget(final File file) {
+        Sweep.FILES.remove(file.getAbsolutePath());
+    }
+
+    @Override
+    public void run() {
+        final long threshold = System.currentTimeMillis() - this.age;
+        int deleted = 0;
+        for (final Map.Entry<String, Sweep.Owner> ent
+            : Sweep.FILES.entrySet()) {
+            final File file = new File(ent.getKey());
+            if (!file.exists()) {
+                Sweep.FILES.remove(ent.getKey(), ent.getValue());
+            } else if (this.age < 0L || ent.getValue().gone(threshold)) {
+                if (file.delete()) {
+                    ++deleted;
+                }
+                Sweep.FILES.remove(ent.getKey(), ent.getValue());
+            }
+        }
+        if (deleted > 0) {
+            Logger.debug(this, "%d orphan file(s) deleted", deleted);
+        }
+    }
+
+    /**
+     * Owner of a file.
+     */
+    private static final class Owner {
+        /**
+         * The owner, or NULL if the file was given away.
+         */
+        private final transient WeakReference<Object> ref;
+        /**
+         * When the file was given away, or zero.
+         */
+        private final transient long time;
+        /**
+         * Ctor.
+         * @param owner The owner, or NULL
+         */
+        Owner(final Object owner) {
+            if (owner == null) {
+                this.ref = null;
+                this.time = System.currentTimeMillis();
+            } else {
+                this.ref = new WeakReference<Object>(owner);
+                this.time = 0L;
+            }
+        }
+        /**
+         * The file is not needed any more?
+         * @param threshold Time before which files given away are old
+         * @return TRUE if it can be deleted
+         */
+        public boolean gone(final long threshold) {
+            final boolean gone;
+            if (this.ref == null) {
+                gone = this.time < threshold;
+            } else {
+                gone = this.ref.get() == null;
+            }
+            return gone;
+        }
+    }
+
+}
@@ -31,19 +31,33 @@ package org.phandom;
 
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 
 /**
  * Temp file.
  *
+ * <p>Files are created in the directory set by {@code phandom.tmpdir}
+ * system property (for example, a tmpfs mount), or in the default
+ * temporary directory of the JVM. The file is deleted by
+ * {@link #close()}, which has to be called as soon as the file is not
+ * needed. Files that are never closed are deleted by {@link Sweep},
+ * when their {@code Temp} objects are garbage collected, or when
+ * the JVM exits.
+ *
+ * <p>Content is moved to the file through NIO channels, directly from
+ * the file channel when the stream is a {@link FileInputStream}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 0.3
@@ -52,7 +66,22 @@ import org.apache.commons.io.IOUtils;
 @ToString
 @EqualsAndHashCode(of = "path")
 @Loggable(Loggable.DEBUG)
-final class Temp {
+final class Temp implements Closeable {
+
+    /**
+     * Prefix of all file names.
+     */
+    public static final String PREFIX = "phandom-";
+
+    /**
+     * System property with the directory.
+     */
+    private static final String PROPERTY = "phandom.tmpdir";
+
+    /**
+     * Maximum number of bytes to transfer at once.
+     */
+    private static final long CHUNK = 1L << 23;
 
     /**
      * Location of the file.
@@ -67,15 +96,23 @@ final class Temp {
      */
     Temp(final InputStream content, final String ext)
         throws IOException {
-        final File file = File.createTempFile("phandom-", ext);
-        FileUtils.forceDeleteOnExit(file);
-        final OutputStream output = new FileOutputStream(file);
+        final File file = File.createTempFile(Temp.PREFIX, ext, Temp.dir());
+        boolean done = false;
         try {
-            IOUtils.copy(content, output);
+            final FileOutputStream output = new FileOutputStream(file);
+            try {
+                Temp.copy(content, output.getChannel());
+            } finally {
+                output.close();
+            }
+            done = true;
         } finally {
-            output.close();
+            if (!done) {
+                FileUtils.deleteQuietly(file);
+            }
         }
         this.path = file.getAbsolutePath();
+        Sweep.track(file, this);
     }
 
     /**
@@ -86,4 +123,72 @@ final class Temp {
         return new File(this.path);
     }
 
+    /**
+     * Give the file away to another process, which will delete it.
+     *
+     * <p>The file stays after this object is garbage collected and is
+     * deleted by {@link Sweep} only when it gets too old.
+     *
+     * @return The file
+     * @since 0.4
+     */
+    public File release() {
+        final File file = this.file();
+        Sweep.release(file);
+        return file;
+    }
+
+    @Override
+    public void close() {
+        final File file = this.file();
+        FileUtils.deleteQuietly(file);
+        Sweep.forget(file);
+    }
+
+    /**
+     * Directory for temporary files.
+     * @return Directory
+     * @throws IOException If fails
+     * @since 0.4
+     */
+    public static File dir() throws IOException {
+        final String name = System.getProperty(Temp.PROPERTY);
+        final File dir;
+        if (name == null || name.isEmpty()) {
+            dir = FileUtils.getTempDirectory();
+        } else {
+            dir = new File(name);
+            FileUtils.forceMkdir(dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Copy the stream to the file channel, without copies on heap when
+     * the stream is a file.
+     *
+     * <p>The stream is read to the end, but is not closed.
+     *
+     * @param input The stream
+     * @param output The channel
+     * @throws IOException If fails
+     */
+    private static void copy(final InputStream input,
+        final FileChannel output) throws IOException {
+        final ReadableByteChannel source;
+        if (input instanceof FileInputStream) {
+            source = ((FileInputStream) input).getChannel();
+        } else {
+            source = Channels.newChannel(input);
+        }
+        long pos = 0L;
+        while (true) {
+            final long done = output.transferFrom(source, pos, Temp.CHUNK);
+            if (done <= 0L) {
+                break;
+            }
+            pos += done;
+        }
+    }
+
 }
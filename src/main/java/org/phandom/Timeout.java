@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.IOException;
+
+/**
+ * Rendering took longer than allowed by {@link Options#timeout()}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class Timeout extends IOException {
+
+    /**
+     * Serialization marker.
+     */
+    private static final long serialVersionUID = 0x7f4a11c2e3d9b805L;
+
+    /**
+     * Phase of rendering, when the time was out.
+     */
+    private final transient String stage;
+
+    /**
+     * Public ctor.
+     * @param phase Phase of rendering, e.g. "load" or "serialize"
+     * @param msec Timeout in milliseconds
+     */
+    public Timeout(final String phase, final long msec) {
+        super(
+            String.format(
+                "phantomjs timed out after %dms in \"%s\" phase", msec, phase
+            )
+        );
+        this.stage = phase;
+    }
+
+    /**
+     * Ctor of a copy, to be thrown in another thread.
+     * @param origin The original exception, which becomes the cause
+     */
+    Timeout(final Timeout origin) {
+        super(origin.getMessage(), origin);
+        this.stage = origin.stage;
+    }
+
+    /**
+     * Phase of rendering, when the time was out.
+     * @return Phase, e.g. "load", "ready", "serialize" or "output"
+     */
+    public String phase() {
+        return this.stage;
+    }
+
+}
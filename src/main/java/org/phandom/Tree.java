@@ -0,0 +1,924 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * DOM tree of a script-free page, built from tokens of {@link Markup}.
+ *
+ * <p>It is the subset of HTML5 tree construction that WebKit applies to
+ * static markup: implied {@code html}, {@code head} and {@code body},
+ * whitespace placement around them, paragraphs, list items and table
+ * cells closed by the next ones, and implied {@code tbody} and
+ * {@code tr} in tables. Whenever the full algorithm would do something
+ * else (reconstruct misnested formatting elements, foster-parent
+ * content of a table, switch to another insertion mode, etc.),
+ * {@link Markup.Unsupported} is thrown and the page goes to PhantomJS.
+ * The same happens to elements nested deeper than 256 levels, since
+ * WebKit stops nesting them at 512 and puts the rest next to each
+ * other, which the tree doesn't reproduce.
+ *
+ * <p>The tree is serialized exactly like {@code dom.js} does it.
+ *
+ * <p>The class is not thread-safe, it is used by one thread only.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+final class Tree {
+
+    /**
+     * Before {@code html}.
+     */
+    private static final int BEFORE_HTML = 0;
+
+    /**
+     * Before {@code head}.
+     */
+    private static final int BEFORE_HEAD = 1;
+
+    /**
+     * Inside {@code head}.
+     */
+    private static final int IN_HEAD = 2;
+
+    /**
+     * After {@code head}, before {@code body}.
+     */
+    private static final int AFTER_HEAD = 3;
+
+    /**
+     * Inside {@code body}.
+     */
+    private static final int IN_BODY = 4;
+
+    /**
+     * After {@code </body>}.
+     */
+    private static final int AFTER_BODY = 5;
+
+    /**
+     * After {@code </html>}.
+     */
+    private static final int AFTER_HTML = 6;
+
+    /**
+     * Maximum number of open elements.
+     */
+    private static final int DEPTH = 256;
+
+    /**
+     * Formatting elements, which HTML5 reconstructs when misnested.
+     */
+    private static final Set<String> FORMATTING = Tree.set(
+        "a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small",
+        "strike", "strong", "tt", "u"
+    );
+
+    /**
+     * Elements that close an open {@code p}.
+     */
+    private static final Set<String> CLOSES_P = Tree.set(
+        "address", "article", "aside", "blockquote", "center", "dd", "dir",
+        "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer",
+        "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr",
+        "li", "listing", "nav", "ol", "p", "pre", "section", "ul"
+    );
+
+    /**
+     * Elements closed by their end tags together with the elements
+     * opened inside them.
+     */
+    private static final Set<String> BLOCKS = Tree.set(
+        "address", "article", "aside", "blockquote", "button", "center",
+        "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer",
+        "header", "hgroup", "listing", "nav", "ol", "pre", "section", "ul"
+    );
+
+    /**
+     * Headings.
+     */
+    private static final Set<String> HEADINGS = Tree.set(
+        "h1", "h2", "h3", "h4", "h5", "h6"
+    );
+
+    /**
+     * Void elements, which never have content.
+     */
+    private static final Set<String> VOIDS = Tree.set(
+        "area", "base", "br", "hr", "img", "input", "link", "meta", "param",
+        "source", "track", "wbr"
+    );
+
+    /**
+     * Elements serialized as empty tags when they have no content,
+     * see {@code VOID} in {@code dom.js}.
+     */
+    private static final Set<String> EMPTY = Tree.set(
+        "br", "hr", "img", "input", "link", "meta"
+    );
+
+    /**
+     * Elements that need the parts of the HTML5 algorithm we don't
+     * implement, or scripting, or plugins.
+     */
+    private static final Set<String> UNSUPPORTED = Tree.set(
+        "applet", "basefont", "bgsound", "body", "caption", "col",
+        "colgroup", "command", "details", "dialog", "embed", "frame",
+        "frameset", "head", "html", "iframe", "image", "isindex", "keygen",
+        "main", "marquee", "math", "menu", "menuitem", "noembed", "noframes",
+        "nobr", "noscript", "object", "optgroup", "option", "plaintext",
+        "rb", "rp", "rt", "rtc", "ruby", "script", "search", "select",
+        "summary", "svg", "template", "textarea", "xmp"
+    );
+
+    /**
+     * Elements allowed in {@code head}.
+     */
+    private static final Set<String> HEAD = Tree.set(
+        "base", "link", "meta", "style", "title"
+    );
+
+    /**
+     * Elements that hold rows of a table.
+     */
+    private static final Set<String> TABLE = Tree.set(
+        "table", "tbody", "tfoot", "thead", "tr"
+    );
+
+    /**
+     * Sections of a table.
+     */
+    private static final Set<String> SECTIONS = Tree.set(
+        "tbody", "tfoot", "thead"
+    );
+
+    /**
+     * Table cells.
+     */
+    private static final Set<String> CELLS = Tree.set("td", "th");
+
+    /**
+     * Elements that have special parsing rules in HTML5.
+     */
+    private static final Set<String> SPECIAL = Tree.set(
+        "address", "applet", "area", "article", "aside", "base", "basefont",
+        "bgsound", "blockquote", "body", "br", "button", "caption", "center",
+        "col", "colgroup", "dd", "details", "dir", "div", "dl", "dt", "embed",
+        "fieldset", "figcaption", "figure", "footer", "form", "frame",
+        "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header",
+        "hgroup", "hr", "html", "iframe", "img", "input", "keygen", "li",
+        "link", "listing", "main", "marquee", "menu", "meta", "nav",
+        "noembed", "noframes", "noscript", "object", "ol", "p", "param",
+        "plaintext", "pre", "script", "section", "select", "source", "style",
+        "summary", "table", "tbody", "td", "template", "textarea", "tfoot",
+        "th", "thead", "title", "tr", "track", "ul", "wbr", "xmp"
+    );
+
+    /**
+     * Boundaries of the default scope.
+     */
+    private static final Set<String> SCOPE = Tree.set(
+        "applet", "caption", "html", "marquee", "object", "table", "td",
+        "template", "th"
+    );
+
+    /**
+     * Boundaries of the list item scope.
+     */
+    private static final Set<String> LIST_SCOPE = Tree.set(
+        "applet", "caption", "html", "marquee", "object", "ol", "table", "td",
+        "template", "th", "ul"
+    );
+
+    /**
+     * Boundaries of the button scope.
+     */
+    private static final Set<String> BUTTON_SCOPE = Tree.set(
+        "applet", "button", "caption", "html", "marquee", "object", "table",
+        "td", "template", "th"
+    );
+
+    /**
+     * Boundaries of the table scope.
+     */
+    private static final Set<String> TABLE_SCOPE = Tree.set(
+        "html", "table", "template"
+    );
+
+    /**
+     * The document.
+     */
+    private final transient Tree.Node doc;
+
+    /**
+     * Open elements, the current one is the last.
+     */
+    private final transient List<Tree.Node> stack;
+
+    /**
+     * Insertion mode.
+     */
+    private transient int mode;
+
+    /**
+     * Was there a doctype?
+     */
+    private transient boolean doctyped;
+
+    /**
+     * Is it in quirks mode (no doctype)?
+     */
+    private transient boolean quirks;
+
+    /**
+     * Must the next line feed be dropped (right after {@code pre})?
+     */
+    private transient boolean feed;
+
+    /**
+     * Ctor.
+     */
+    Tree() {
+        this.doc = new Tree.Node("", new ArrayList<String[]>(0));
+        this.stack = new ArrayList<Tree.Node>(0);
+    }
+
+    /**
+     * Doctype.
+     * @param body Everything between {@code <!DOCTYPE} and {@code >}
+     * @throws Markup.Unsupported If it is not supported
+     */
+    public void doctype(final String body) throws Markup.Unsupported {
+        this.feed = false;
+        if (this.mode != Tree.BEFORE_HTML || this.doctyped
+            || !"html".equals(body.trim().toLowerCase(Locale.ENGLISH))) {
+            throw new Markup.Unsupported(
+                String.format("doctype \"%s\"", body.trim())
+            );
+        }
+        this.doctyped = true;
+        this.doc.kids.add("<!DOCTYPE html>");
+    }
+
+    /**
+     * Comment.
+     * @param data Its content
+     */
+    public void comment(final String data) {
+        this.feed = false;
+        final Tree.Node parent;
+        if (this.mode == Tree.BEFORE_HTML || this.mode == Tree.AFTER_HTML) {
+            parent = this.doc;
+        } else if (this.mode == Tree.AFTER_BODY) {
+            parent = this.stack.get(0);
+        } else {
+            parent = this.current();
+        }
+        parent.kids.add(String.format("<!--%s-->", data));
+    }
+
+    /**
+     * Text.
+     * @param chars The text, with references already decoded
+     * @throws Markup.Unsupported If it is not supported
+     */
+    public void text(final String chars) throws Markup.Unsupported {
+        String rest = chars;
+        if (this.feed && !rest.isEmpty() && rest.charAt(0) == '\n') {
+            rest = rest.substring(1);
+        }
+        this.feed = false;
+        while (!rest.isEmpty()) {
+            final int spaces = Tree.spaces(rest);
+            if (this.mode < Tree.IN_HEAD) {
+                rest = rest.substring(spaces);
+                if (!rest.isEmpty()) {
+                    this.implied();
+                }
+            } else if (this.mode < Tree.IN_BODY) {
+                if (spaces > 0) {
+                    this.current().kids.add(rest.substring(0, spaces));
+                }
+                rest = rest.substring(spaces);
+                if (!rest.isEmpty()) {
+                    this.implied();
+                }
+            } else {
+                if (spaces < rest.length() && (this.mode != Tree.IN_BODY
+                    || Tree.TABLE.contains(this.current().name))) {
+                    throw new Markup.Unsupported(
+                        String.format("text in <%s>", this.current().name)
+                    );
+                }
+                this.current().kids.add(Tree.escape(rest, false));
+                rest = "";
+            }
+        }
+    }
+
+    /**
+     * Start tag.
+     * @param name Name of the element, in lower case
+     * @param attrs Attributes, names and values
+     * @param raw Content, if the element is {@code title} or {@code style}
+     * @throws Markup.Unsupported If it is not supported
+     */
+    public void start(final String name, final List<String[]> attrs,
+        final String raw) throws Markup.Unsupported {
+        this.feed = false;
+        Tree.check(name, attrs);
+        boolean done = false;
+        while (!done) {
+            done = true;
+            if (this.mode == Tree.BEFORE_HTML && "html".equals(name)) {
+                this.open(name, attrs);
+                this.quirks = !this.doctyped;
+                this.mode = Tree.BEFORE_HEAD;
+            } else if (this.mode == Tree.BEFORE_HEAD && "head".equals(name)) {
+                this.open(name, attrs);
+                this.mode = Tree.IN_HEAD;
+            } else if (this.mode == Tree.IN_HEAD && Tree.HEAD.contains(name)) {
+                this.insert(name, attrs, raw);
+            } else if (this.mode == Tree.AFTER_HEAD && "body".equals(name)) {
+                this.open(name, attrs);
+                this.mode = Tree.IN_BODY;
+            } else if (this.mode == Tree.IN_BODY) {
+                this.body(name, attrs, raw);
+            } else if (this.mode < Tree.IN_BODY && this.implies(name)) {
+                this.implied();
+                done = false;
+            } else {
+                throw new Markup.Unsupported(
+                    String.format("<%s> in mode #%d", name, this.mode)
+                );
+            }
+        }
+    }
+
+    /**
+     * End tag.
+     * @param name Name of the element, in lower case
+     * @throws Markup.Unsupported If it is not supported
+     */
+    public void end(final String name) throws Markup.Unsupported {
+        this.feed = false;
+        if (this.mode == Tree.IN_HEAD && "head".equals(name)) {
+            this.stack.remove(this.stack.size() - 1);
+            this.mode = Tree.AFTER_HEAD;
+        } else if (this.mode == Tree.IN_BODY) {
+            this.close(name);
+        } else if (this.mode == Tree.AFTER_BODY && "html".equals(name)) {
+            this.mode = Tree.AFTER_HTML;
+        } else {
+            throw new Markup.Unsupported(
+                String.format("</%s> in mode #%d", name, this.mode)
+            );
+        }
+    }
+
+    /**
+     * Finish the document and serialize it.
+     * @return XHTML
+     * @throws Markup.Unsupported If it is not supported
+     */
+    public String xhtml() throws Markup.Unsupported {
+        while (this.mode < Tree.IN_BODY) {
+            this.implied();
+        }
+        final StringBuilder out = new StringBuilder(0);
+        final Deque<Object> todo = new ArrayDeque<Object>(0);
+        todo.push(this.doc);
+        while (!todo.isEmpty()) {
+            final Object item = todo.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+                continue;
+            }
+            final Tree.Node node = (Tree.Node) item;
+            if (node != this.doc) {
+                out.append('<').append(node.name);
+                for (final String[] attr : node.attrs) {
+                    out.append(' ').append(attr[0]).append("=\"")
+                        .append(Tree.escape(attr[1], true)).append('"');
+                }
+                if (node.kids.isEmpty() && Tree.EMPTY.contains(node.name)) {
+                    out.append("/>");
+                    continue;
+                }
+                out.append('>');
+                todo.push(String.format("</%s>", node.name));
+            }
+            for (int idx = node.kids.size() - 1; idx >= 0; --idx) {
+                todo.push(node.kids.get(idx));
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Start tag in body.
+     * @param name Name of the element
+     * @param attrs Attributes
+     * @param raw Content of {@code title} or {@code style}, or NULL
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void body(final String name, final List<String[]> attrs,
+        final String raw) throws Markup.Unsupported {
+        if (Tree.TABLE.contains(this.current().name)) {
+            this.table(name, attrs, raw);
+        } else if (!"table".equals(name)
+            && (Tree.TABLE.contains(name) || Tree.CELLS.contains(name))) {
+            if (!this.cell()) {
+                throw new Markup.Unsupported(
+                    String.format("<%s> outside of a table", name)
+                );
+            }
+            this.pop(this.nearest(Tree.CELLS), false);
+            this.table(name, attrs, raw);
+        } else {
+            this.flow(name, attrs, raw);
+        }
+    }
+
+    /**
+     * Start tag in body, outside of table structure.
+     * @param name Name of the element
+     * @param attrs Attributes
+     * @param raw Content of {@code title} or {@code style}, or NULL
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void flow(final String name, final List<String[]> attrs,
+        final String raw) throws Markup.Unsupported {
+        if (Tree.UNSUPPORTED.contains(name)
+            || ("a".equals(name) || "form".equals(name))
+            && this.nearest(Tree.set(name)) >= 0
+            || "button".equals(name)
+            && this.scoped(name, Tree.SCOPE) >= 0
+            || Tree.HEADINGS.contains(name)
+            && Tree.HEADINGS.contains(this.current().name)) {
+            throw new Markup.Unsupported(
+                String.format("<%s> in <%s>", name, this.current().name)
+            );
+        }
+        if ("li".equals(name)) {
+            this.item(Tree.set(name));
+        } else if ("dd".equals(name) || "dt".equals(name)) {
+            this.item(Tree.set("dd", "dt"));
+        }
+        if ((Tree.CLOSES_P.contains(name) || "table".equals(name)
+            && !this.quirks) && this.scoped("p", Tree.BUTTON_SCOPE) >= 0) {
+            this.pop(this.scoped("p", Tree.BUTTON_SCOPE), true);
+        }
+        if (Tree.VOIDS.contains(name) || raw != null) {
+            this.insert(name, attrs, raw);
+        } else {
+            this.open(name, attrs);
+        }
+        if ("pre".equals(name) || "listing".equals(name)) {
+            this.feed = true;
+        }
+    }
+
+    /**
+     * Start tag right inside a table, a section of it, or a row.
+     * @param name Name of the element
+     * @param attrs Attributes
+     * @param raw Content of {@code style}, or NULL
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void table(final String name, final List<String[]> attrs,
+        final String raw) throws Markup.Unsupported {
+        final List<String[]> none = new ArrayList<String[]>(0);
+        if ("style".equals(name)) {
+            this.insert(name, attrs, raw);
+        } else if (Tree.SECTIONS.contains(name)) {
+            this.pop(this.nearest(Tree.set("table")) + 1, false);
+            this.open(name, attrs);
+        } else if ("tr".equals(name)) {
+            if ("table".equals(this.current().name)) {
+                this.open("tbody", none);
+            } else if ("tr".equals(this.current().name)) {
+                this.pop(this.stack.size() - 1, false);
+            }
+            this.open(name, attrs);
+        } else if (Tree.CELLS.contains(name)) {
+            if ("table".equals(this.current().name)) {
+                this.open("tbody", none);
+            }
+            if (!"tr".equals(this.current().name)) {
+                this.open("tr", none);
+            }
+            this.open(name, attrs);
+        } else {
+            throw new Markup.Unsupported(
+                String.format("<%s> in <%s>", name, this.current().name)
+            );
+        }
+    }
+
+    /**
+     * End tag in body.
+     * @param name Name of the element
+     * @throws Markup.Unsupported If it is not supported
+     * @checkstyle CyclomaticComplexity (100 lines)
+     */
+    private void close(final String name) throws Markup.Unsupported {
+        final String current = this.current().name;
+        if (Tree.TABLE.contains(current)) {
+            this.rows(name);
+        } else if (Tree.CELLS.contains(name) || Tree.TABLE.contains(name)) {
+            final int cell = this.nearest(Tree.CELLS);
+            if (!this.cell() || Tree.CELLS.contains(name)
+                && !name.equals(this.stack.get(cell).name)
+                || Tree.TABLE.contains(name)
+                && this.scoped(name, Tree.TABLE_SCOPE) < 0) {
+                throw new Markup.Unsupported(
+                    String.format("</%s> in <%s>", name, current)
+                );
+            }
+            this.pop(cell, false);
+            if (Tree.TABLE.contains(name)) {
+                this.rows(name);
+            }
+        } else if ("body".equals(name)) {
+            this.mode = Tree.AFTER_BODY;
+        } else if ("html".equals(name)) {
+            this.mode = Tree.AFTER_HTML;
+        } else if ("p".equals(name)) {
+            this.pop(this.required(name, Tree.BUTTON_SCOPE), true);
+        } else if ("li".equals(name)) {
+            this.pop(this.required(name, Tree.LIST_SCOPE), true);
+        } else if ("dd".equals(name) || "dt".equals(name)
+            || Tree.BLOCKS.contains(name)) {
+            this.pop(this.required(name, Tree.SCOPE), true);
+        } else if (name.equals(current) && (Tree.HEADINGS.contains(name)
+            || Tree.FORMATTING.contains(name) || "form".equals(name))) {
+            this.pop(this.stack.size() - 1, false);
+        } else {
+            this.other(name);
+        }
+    }
+
+    /**
+     * End tag of an element without special rules.
+     * @param name Name of the element
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void other(final String name) throws Markup.Unsupported {
+        int found = -1;
+        for (int idx = this.stack.size() - 1; idx >= 0; --idx) {
+            final String open = this.stack.get(idx).name;
+            if (open.equals(name)) {
+                found = idx;
+                break;
+            }
+            if (Tree.SPECIAL.contains(open)) {
+                break;
+            }
+        }
+        if (found < 0 || Tree.SPECIAL.contains(name)
+            || Tree.FORMATTING.contains(name)) {
+            throw new Markup.Unsupported(
+                String.format("</%s> in <%s>", name, this.current().name)
+            );
+        }
+        this.pop(found, true);
+    }
+
+    /**
+     * End tag right inside a table, a section of it, or a row.
+     * @param name Name of the element
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void rows(final String name) throws Markup.Unsupported {
+        if (Tree.SECTIONS.contains(name)
+            && "tr".equals(this.current().name)) {
+            this.pop(this.stack.size() - 1, false);
+        }
+        if ("table".equals(name)) {
+            this.pop(this.nearest(Tree.set(name)), false);
+        } else if (name.equals(this.current().name)
+            && (Tree.SECTIONS.contains(name) || "tr".equals(name))) {
+            this.pop(this.stack.size() - 1, false);
+        } else {
+            throw new Markup.Unsupported(
+                String.format("</%s> in <%s>", name, this.current().name)
+            );
+        }
+    }
+
+    /**
+     * Close an open list item before a new one.
+     * @param items Names of list items
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void item(final Set<String> items) throws Markup.Unsupported {
+        for (int idx = this.stack.size() - 1; idx >= 0; --idx) {
+            final String open = this.stack.get(idx).name;
+            if (items.contains(open)) {
+                this.pop(idx, true);
+                break;
+            }
+            if (Tree.SPECIAL.contains(open) && !"address".equals(open)
+                && !"div".equals(open) && !"p".equals(open)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Does this start tag imply the elements missing before it?
+     * @param name Name of the element
+     * @return TRUE if it does
+     */
+    private boolean implies(final String name) {
+        return ("body".equals(name) || !Tree.UNSUPPORTED.contains(name)
+            || "head".equals(name) && this.mode == Tree.BEFORE_HTML)
+            && !(this.mode == Tree.AFTER_HEAD && Tree.HEAD.contains(name));
+    }
+
+    /**
+     * Step to the next insertion mode, adding an implied element.
+     * @throws Markup.Unsupported If it is nested too deep
+     */
+    private void implied() throws Markup.Unsupported {
+        final List<String[]> none = new ArrayList<String[]>(0);
+        if (this.mode == Tree.BEFORE_HTML) {
+            this.open("html", none);
+            this.quirks = !this.doctyped;
+        } else if (this.mode == Tree.BEFORE_HEAD) {
+            this.open("head", none);
+        } else if (this.mode == Tree.IN_HEAD) {
+            this.stack.remove(this.stack.size() - 1);
+        } else {
+            this.open("body", none);
+        }
+        this.mode += 1;
+    }
+
+    /**
+     * Open an element and make it current.
+     * @param name Name of it
+     * @param attrs Attributes
+     * @throws Markup.Unsupported If it is nested too deep
+     */
+    private void open(final String name, final List<String[]> attrs)
+        throws Markup.Unsupported {
+        if (this.stack.size() >= Tree.DEPTH) {
+            throw new Markup.Unsupported(
+                String.format("more than %d nested elements", Tree.DEPTH)
+            );
+        }
+        final Tree.Node node = new Tree.Node(name, attrs);
+        this.current().kids.add(node);
+        this.stack.add(node);
+    }
+
+    /**
+     * Insert an element that can't have elements inside.
+     * @param name Name of it
+     * @param attrs Attributes
+     * @param raw Text inside it, or NULL
+     */
+    private void insert(final String name, final List<String[]> attrs,
+        final String raw) {
+        final Tree.Node node = new Tree.Node(name, attrs);
+        if (raw != null && !raw.isEmpty()) {
+            node.kids.add(Tree.escape(raw, false));
+        }
+        this.current().kids.add(node);
+    }
+
+    /**
+     * Pop open elements, down to the given position, inclusive.
+     * @param pos Position in the stack
+     * @param strict Fail if a formatting element is closed implicitly
+     * @throws Markup.Unsupported If it is not supported
+     */
+    private void pop(final int pos, final boolean strict)
+        throws Markup.Unsupported {
+        while (this.stack.size() > pos) {
+            final Tree.Node node = this.stack.remove(this.stack.size() - 1);
+            if (strict && this.stack.size() > pos
+                && Tree.FORMATTING.contains(node.name)) {
+                throw new Markup.Unsupported(
+                    String.format("misnested <%s>", node.name)
+                );
+            }
+        }
+    }
+
+    /**
+     * Is there an open table cell, inside the current table?
+     * @return TRUE if the current node is inside a cell
+     */
+    private boolean cell() {
+        final int cell = this.nearest(Tree.CELLS);
+        return cell >= 0 && cell > this.nearest(Tree.TABLE);
+    }
+
+    /**
+     * Position of the nearest open element with one of these names.
+     * @param names Names
+     * @return Position in the stack, or -1 if there is none
+     */
+    private int nearest(final Collection<String> names) {
+        int pos = -1;
+        for (int idx = this.stack.size() - 1; idx >= 0; --idx) {
+            if (names.contains(this.stack.get(idx).name)) {
+                pos = idx;
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Position of the open element in scope.
+     * @param name Name of the element
+     * @param bounds Boundaries of the scope
+     * @return Position in the stack, or -1 if it is not in scope
+     */
+    private int scoped(final String name, final Set<String> bounds) {
+        int pos = -1;
+        for (int idx = this.stack.size() - 1; idx >= 0; --idx) {
+            final String open = this.stack.get(idx).name;
+            if (open.equals(name)) {
+                pos = idx;
+                break;
+            }
+            if (bounds.contains(open)) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Position of the open element that must be in scope.
+     * @param name Name of the element
+     * @param bounds Boundaries of the scope
+     * @return Position in the stack
+     * @throws Markup.Unsupported If it is not in scope
+     */
+    private int required(final String name, final Set<String> bounds)
+        throws Markup.Unsupported {
+        final int pos = this.scoped(name, bounds);
+        if (pos < 0) {
+            throw new Markup.Unsupported(
+                String.format("</%s> without <%s>", name, name)
+            );
+        }
+        return pos;
+    }
+
+    /**
+     * Current node.
+     * @return The node
+     */
+    private Tree.Node current() {
+        final Tree.Node node;
+        if (this.stack.isEmpty()) {
+            node = this.doc;
+        } else {
+            node = this.stack.get(this.stack.size() - 1);
+        }
+        return node;
+    }
+
+    /**
+     * Make sure the element doesn't need scripting or a navigation.
+     * @param name Name of it
+     * @param attrs Its attributes
+     * @throws Markup.Unsupported If it does
+     */
+    private static void check(final String name, final List<String[]> attrs)
+        throws Markup.Unsupported {
+        for (final String[] attr : attrs) {
+            if (attr[0].startsWith("on")
+                || "meta".equals(name) && "http-equiv".equals(attr[0])
+                && "refresh".equalsIgnoreCase(attr[1].trim())) {
+                throw new Markup.Unsupported(
+                    String.format("<%s %s>", name, attr[0])
+                );
+            }
+        }
+        if ("script".equals(name) || "noscript".equals(name)
+            || "template".equals(name)) {
+            throw new Markup.Unsupported(String.format("<%s>", name));
+        }
+    }
+
+    /**
+     * How many whitespace characters are at the start of the text.
+     * @param text The text
+     * @return Number of them
+     */
+    private static int spaces(final String text) {
+        int idx = 0;
+        while (idx < text.length() && Markup.space(text.charAt(idx))) {
+            ++idx;
+        }
+        return idx;
+    }
+
+    /**
+     * Escape text the way {@code dom.js} does it.
+     * @param text The text
+     * @param attr Is it a value of an attribute?
+     * @return Escaped text
+     */
+    private static String escape(final String text, final boolean attr) {
+        final StringBuilder out = new StringBuilder(text.length());
+        for (int idx = 0; idx < text.length(); ++idx) {
+            final char chr = text.charAt(idx);
+            if (chr == '<') {
+                out.append("&lt;");
+            } else if (chr == '&') {
+                out.append("&amp;");
+            } else if (chr == '"' && attr) {
+                out.append("&quot;");
+            } else {
+                out.append(chr);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Make a set.
+     * @param names Names of elements
+     * @return Set of them
+     */
+    private static Set<String> set(final String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    /**
+     * Element or document.
+     */
+    private static final class Node {
+        /**
+         * Name of the element, empty for the document.
+         */
+        private final transient String name;
+        /**
+         * Attributes, names and values.
+         */
+        private final transient List<String[]> attrs;
+        /**
+         * Children, nodes and serialized text.
+         */
+        private final transient List<Object> kids;
+        /**
+         * Ctor.
+         * @param nme Name of the element
+         * @param attributes Attributes
+         */
+        Node(final String nme, final List<String[]> attributes) {
+            this.name = nme;
+            this.attrs = attributes;
+            this.kids = new ArrayList<Object>(0);
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Watchdog, which kills a phantomjs process when its time is out.
+ *
+ * <p>It gives {@code dom.js} a second more than the timeout, so that
+ * the script has a chance to report the timeout itself. The watchdog
+ * only has to kill the process when its event loop is stuck, for
+ * example in an infinite loop of a page script.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+final class Watchdog {
+
+    /**
+     * Extra time for dom.js to report the timeout itself, in msec.
+     */
+    private static final long GRACE = 1000L;
+
+    /**
+     * Scheduler of all watchdogs.
+     */
+    private static final ScheduledExecutorService SERVICE =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(
+                        runnable, "phandom-watchdog"
+                    );
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+
+    /**
+     * The process to watch.
+     */
+    private final transient Process process;
+
+    /**
+     * Timeout in milliseconds, or zero.
+     */
+    private final transient long msec;
+
+    /**
+     * Scheduled kill, if any.
+     */
+    private final transient AtomicReference<ScheduledFuture<?>> kill;
+
+    /**
+     * Was the process killed?
+     */
+    private final transient AtomicBoolean fired;
+
+    /**
+     * Ctor.
+     * @param proc The process to watch
+     * @param timeout Timeout in milliseconds, or zero if no timeout
+     */
+    Watchdog(final Process proc, final long timeout) {
+        this.process = proc;
+        this.msec = timeout;
+        this.kill = new AtomicReference<ScheduledFuture<?>>();
+        this.fired = new AtomicBoolean();
+    }
+
+    /**
+     * Start watching.
+     */
+    public void start() {
+        if (this.msec > 0L) {
+            final Process proc = this.process;
+            final AtomicBoolean killed = this.fired;
+            this.kill.set(
+                Watchdog.SERVICE.schedule(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            killed.set(true);
+                            proc.destroy();
+                        }
+                    },
+                    this.msec + Watchdog.GRACE, TimeUnit.MILLISECONDS
+                )
+            );
+        }
+    }
+
+    /**
+     * Stop watching.
+     */
+    public void cancel() {
+        final ScheduledFuture<?> future = this.kill.getAndSet(null);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Did it kill the process?
+     * @return TRUE if the process was killed
+     */
+    public boolean fired() {
+        return this.fired.get();
+    }
+
+}
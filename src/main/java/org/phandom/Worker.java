@@ -0,0 +1,384 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Long-living PhantomJS process, running {@code dom.js} in worker mode.
+ *
+ * <p>Jobs are sent to its stdin as JSON, one per line. Every result
+ * is printed to stdout and followed by a line with the ID of the job
+ * and the status code of rendering. When a job times out, its result
+ * is the name of the phase, where it happened. Results are read from
+ * stdout in chunks, straight into a {@link Spill}, since a rendered
+ * page may take hundreds of megabytes.
+ *
+ * <p>The class is NOT thread-safe, it is supposed to be used by one
+ * thread at a time, see {@link Pool}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+@ToString(of = "jobs")
+final class Worker implements Closeable {
+
+    /**
+     * The process.
+     */
+    private final transient Process process;
+
+    /**
+     * Its stdin.
+     */
+    private final transient Writer stdin;
+
+    /**
+     * Its stdout.
+     */
+    private final transient Reader stdout;
+
+    /**
+     * Buffer of chars from stdout.
+     */
+    private final transient char[] buffer;
+
+    /**
+     * Position of the next char in the buffer.
+     */
+    private transient int pos;
+
+    /**
+     * Number of chars in the buffer.
+     */
+    private transient int limit;
+
+    /**
+     * Counter of bytes in stdout.
+     */
+    private final transient CountingInputStream counter;
+
+    /**
+     * Its stderr.
+     */
+    private final transient Stderr stderr;
+
+    /**
+     * How many jobs were completed.
+     */
+    private final transient AtomicInteger jobs;
+
+    /**
+     * TRUE if the last job was not completely read from stdout.
+     */
+    private final transient AtomicBoolean broken;
+
+    /**
+     * Public ctor.
+     * @param builder Builder of the phantomjs process
+     * @throws IOException If fails
+     */
+    Worker(final ProcessBuilder builder) throws IOException {
+        this.process = builder.start();
+        this.stdin = new OutputStreamWriter(
+            this.process.getOutputStream(), CharEncoding.UTF_8
+        );
+        this.counter = new CountingInputStream(this.process.getInputStream());
+        this.stdout = new InputStreamReader(this.counter, CharEncoding.UTF_8);
+        // @checkstyle MagicNumber (1 line)
+        this.buffer = new char[1 << 13];
+        this.jobs = new AtomicInteger();
+        this.broken = new AtomicBoolean();
+        this.stderr = new Stderr(this.process);
+        this.stderr.start();
+    }
+
+    /**
+     * Render one page.
+     * @param page The page to render
+     * @param options Options of rendering
+     * @param probe Probe to report to
+     * @return XHTML, the stream has to be closed
+     * @throws IOException If fails
+     */
+    public InputStream render(final Page page, final Options options,
+        final Probe probe) throws IOException {
+        return this.stream(
+            String.format(
+                "\"page\":%s,\"options\":%s", page.json(), options.json()
+            ),
+            options.timeout(),
+            probe
+        );
+    }
+
+    /**
+     * Send one line of JSON to the process and read its result.
+     * @param fields Fields of the JSON object, without braces
+     * @param msec Timeout in milliseconds, or zero if no timeout
+     * @param probe Probe to report to
+     * @return Result, e.g. XHTML
+     * @throws IOException If fails
+     * @see #stream(String, long, Probe)
+     */
+    public String call(final String fields, final long msec,
+        final Probe probe) throws IOException {
+        final InputStream input = this.stream(fields, msec, probe);
+        try {
+            return IOUtils.toString(input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Send one line of JSON to the process and stream its result.
+     *
+     * <p>The line gets a new ID, in addition to the given fields.
+     * When the result is a failure, it is reported as an exception;
+     * the message from {@code dom.js}, if any, goes into it.
+     *
+     * @param fields Fields of the JSON object, without braces
+     * @param msec Timeout in milliseconds, or zero if no timeout
+     * @param probe Probe to report to
+     * @return Result, e.g. XHTML, the stream has to be closed
+     * @throws IOException If fails
+     */
+    public InputStream stream(final String fields, final long msec,
+        final Probe probe) throws IOException {
+        final String id = UUID.randomUUID().toString();
+        this.broken.set(true);
+        final Watchdog watchdog = new Watchdog(this.process, msec);
+        watchdog.start();
+        final Spill spill = new Spill();
+        final int code;
+        try {
+            final Writer xml = new OutputStreamWriter(
+                spill, CharEncoding.UTF_8
+            );
+            this.stdin.write(String.format("{\"id\":\"%s\",%s}\n", id, fields));
+            this.stdin.flush();
+            this.counter.resetByteCount();
+            code = this.read(id, xml, probe);
+            xml.flush();
+            probe.count("bytes", this.counter.getByteCount());
+        } catch (final IOException ex) {
+            spill.close();
+            if (watchdog.fired()) {
+                throw new Timeout(this.stderr.phase(), msec);
+            }
+            throw ex;
+        } finally {
+            watchdog.cancel();
+        }
+        this.broken.set(false);
+        this.jobs.incrementAndGet();
+        if (code != 0) {
+            Worker.fail(code, spill, msec);
+        }
+        return spill.input();
+    }
+
+    /**
+     * How many jobs did it complete already.
+     * @return Total number of jobs
+     */
+    public int jobs() {
+        return this.jobs.get();
+    }
+
+    /**
+     * Is it alive and ready to accept new jobs?
+     * @return TRUE if it is healthy
+     */
+    public boolean healthy() {
+        boolean alive;
+        try {
+            this.process.exitValue();
+            alive = false;
+        } catch (final IllegalThreadStateException ex) {
+            alive = true;
+        }
+        return alive && !this.broken.get();
+    }
+
+    /**
+     * Read one result from stdout.
+     *
+     * <p>Lines of the result are joined with new lines, while the last
+     * line, with the ID of the job, is parsed and reported to the probe.
+     *
+     * @param id ID of the job
+     * @param xml Where to put XHTML
+     * @param probe Probe to report statistics to
+     * @return Status code
+     * @throws IOException If fails
+     * @checkstyle ExecutableStatementCount (60 lines)
+     */
+    private int read(final String id, final Writer xml,
+        final Probe probe) throws IOException {
+        final String tail = String.format("%s ", id);
+        final StringBuilder line = new StringBuilder(0);
+        boolean body = false;
+        boolean pending = false;
+        String status = null;
+        while (status == null) {
+            this.fill();
+            int end = this.pos;
+            while (end < this.limit && this.buffer[end] != '\n') {
+                ++end;
+            }
+            if (body) {
+                xml.write(this.buffer, this.pos, end - this.pos);
+            } else {
+                line.append(this.buffer, this.pos, end - this.pos);
+                if (!Worker.matches(line, tail)) {
+                    Worker.append(xml, line, pending);
+                    line.setLength(0);
+                    body = true;
+                }
+            }
+            if (end < this.limit) {
+                if (line.length() >= tail.length()) {
+                    status = line.substring(tail.length());
+                } else if (!body) {
+                    Worker.append(xml, line, pending);
+                }
+                body = false;
+                pending = true;
+                line.setLength(0);
+                ++end;
+            }
+            this.pos = end;
+        }
+        final String[] parts = status.split(" ", 2);
+        final int code = Integer.parseInt(parts[0]);
+        probe.exit(code);
+        if (parts.length > 1) {
+            probe.stats(parts[1]);
+        }
+        return code;
+    }
+
+    /**
+     * Make sure there are chars in the buffer.
+     * @throws IOException If stdout is over
+     */
+    private void fill() throws IOException {
+        if (this.pos == this.limit) {
+            this.pos = 0;
+            this.limit = Math.max(this.stdout.read(this.buffer), 0);
+            if (this.limit == 0) {
+                throw new IOException(
+                    "phantomjs worker exited unexpectedly, see log above"
+                );
+            }
+        }
+    }
+
+    /**
+     * Can this beginning of a line be the line with the ID?
+     * @param line Beginning of a line
+     * @param tail Beginning of the line with the ID
+     * @return TRUE if they match, so far
+     */
+    private static boolean matches(final CharSequence line,
+        final String tail) {
+        final int len = Math.min(line.length(), tail.length());
+        return tail.regionMatches(
+            0, line.subSequence(0, len).toString(), 0, len
+        );
+    }
+
+    /**
+     * Append the beginning of a line of the result.
+     * @param xml Where to put XHTML
+     * @param line Beginning of the line
+     * @param glue TRUE if there were lines before it
+     * @throws IOException If fails
+     */
+    private static void append(final Writer xml, final CharSequence line,
+        final boolean glue) throws IOException {
+        if (glue) {
+            xml.write('\n');
+        }
+        xml.append(line);
+    }
+
+    /**
+     * Throw an exception for the failed job.
+     * @param code Status code
+     * @param spill Its result, which is closed here
+     * @param msec Timeout in milliseconds
+     * @throws IOException Always
+     */
+    private static void fail(final int code, final Spill spill,
+        final long msec) throws IOException {
+        final InputStream input = spill.input();
+        final String msg;
+        try {
+            msg = IOUtils.toString(input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+        if (code == Phantom.TIMEOUT) {
+            throw new Timeout(msg, msec);
+        }
+        if (msg.isEmpty()) {
+            throw new IllegalStateException(
+                String.format("phantomjs failed with code #%d", code)
+            );
+        }
+        throw new IllegalStateException(
+            String.format("phantomjs failed with code #%d: %s", code, msg)
+        );
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(this.stdin);
+        this.process.destroy();
+    }
+
+}
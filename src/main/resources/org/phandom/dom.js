@@ -57,204 +57,961 @@ if (phantom.version.major * 100 + phantom.version.minor < 109) {
 }
 
 // see https://github.com/ariya/phantomjs/wiki/API-Reference-WebPage
-var page = require('webpage').create();
+var webpage = require('webpage');
 var system = require('system');
+var fs = require('fs');
 if (system.args.length === 1) {
-    console.log('Usage: dom.js <file-path>');
+    console.log(
+        'Usage: dom.js <uri> [<file-to-delete>] | dom.js --stdin'
+        + ' | dom.js --worker | dom.js --session'
+    );
     phantom.exit(-1);
 }
 var start = Date.now();
-var failure = false;
-function stderr(msg) {
-    var msec = Date.now() - start;
-    system.stderr.writeLine((msec / 1000).toFixed(3) + ': ' + msg);
+
+/**
+ * Level of diagnostics, set by Java in PHANDOM_LOG environment
+ * variable: "error" (default), "info" or "debug". Messages above
+ * the level are not even built, that's why they are guarded by
+ * INFO and DEBUG flags at call sites.
+ */
+var INFO = /^(info|debug)$/.test(system.env.PHANDOM_LOG || '');
+var DEBUG = system.env.PHANDOM_LOG === 'debug';
+
+/**
+ * Settings of every page, set by Java in PHANDOM_SETTINGS environment
+ * variable, e.g. {"settings":{"userAgent":"Bot"},"viewport":{"width":
+ * 1280,"height":1024}}, see Launch.java.
+ */
+var SETTINGS = JSON.parse(system.env.PHANDOM_SETTINGS || '{}');
+
+/**
+ * Maximum number of info and debug records per page, the rest
+ * are dropped and only counted (errors are never dropped).
+ */
+var QUOTA = 500;
+var quota = QUOTA;
+var dropped = 0;
+
+/**
+ * Write one diagnostic record to stderr, in one line, as
+ * "<msec> <kind> <text>", e.g. "15 E onError: ReferenceError",
+ * see Stderr.java. Kinds are E (error), I (info), D (debug),
+ * P (phase of rendering) and M (statistics of the page).
+ * @param kind Kind of the record
+ * @param msg The text
+ */
+function record(kind, msg) {
+    system.stderr.writeLine(
+        (Date.now() - start) + ' ' + kind + ' '
+        + String(msg).replace(/\n/g, ' | ')
+    );
 }
-stderr(
-    'phantomjs ' + phantom.version.major
-    + '.' + phantom.version.minor
-    + '.' + phantom.version.patch
-);
-page.onConsoleMessage = function (msg) {
-    stderr(msg);
-};
-page.onError = function(msg, trace) {
-    var stack = [];
-    if (trace && trace.length) {
-        trace.forEach(
-            function (t) {
-                stack.push(
-                    '  ' + t.file + ': ' + t.line
-                    + (t['function'] ? ' (in ' + t['function'] + ')' : '')
+function error(msg) {
+    record('E', msg);
+}
+function info(msg) {
+    if (quota > 0) {
+        quota -= 1;
+        record('I', msg);
+    } else {
+        dropped += 1;
+    }
+}
+function debug(msg) {
+    if (quota > 0) {
+        quota -= 1;
+        record('D', msg);
+    } else {
+        dropped += 1;
+    }
+}
+if (INFO) {
+    info(
+        'phantomjs ' + phantom.version.major
+        + '.' + phantom.version.minor
+        + '.' + phantom.version.patch
+    );
+}
+
+/**
+ * Report the phase of rendering, see Stderr.java.
+ * @param name Name of the phase
+ */
+function phase(name) {
+    record('P', name);
+}
+
+/**
+ * Serialize the document currently loaded into the page, or only the
+ * nodes matching the query, see Query.java. Matching nodes are wrapped
+ * into <match> elements inside <matches>: elements are serialized with
+ * their content, other nodes and XPath values become text.
+ *
+ * The DOM is walked iteratively, with an explicit stack, so deep
+ * documents don't hit the recursion limit. Output is collected in
+ * chunks of 65536 parts (tags, attributes, texts), kept inside the
+ * page and fetched one by one, to avoid one huge string on both sides.
+ * Text is escaped only if it contains special characters.
+ * @param page The page
+ * @param query The query, e.g. {"xpath":"//p"} or {"css":"p.a, p.b"},
+ *  or NULL to serialize the entire document
+ * @return Object with chunks of XHTML in "chunks", or with
+ *  the message in "error" if the query failed
+ */
+function serialize(page, query) {
+    var total = page.evaluate(
+        function (query) {
+            /**
+            * borrowed from https://github.com/jindw/xmldom
+            */
+            var ELEMENT_NODE = 1,
+                ATTRIBUTE_NODE = 2,
+                TEXT_NODE = 3,
+                CDATA_SECTION_NODE = 4,
+                ENTITY_REFERENCE_NODE = 5,
+                PROCESSING_INSTRUCTION_NODE = 7,
+                COMMENT_NODE = 8,
+                DOCUMENT_NODE = 9,
+                DOCUMENT_TYPE_NODE = 10,
+                DOCUMENT_FRAGMENT_NODE = 11,
+                XHTML = 'http://www.w3.org/1999/xhtml',
+                VOID = /^(?:meta|link|img|br|hr|input)$/i,
+                PARTS = 1 << 16,
+                chunks = [],
+                parts = [];
+            function _xmlEncoder(c) {
+                return (c === '<' && '&lt;')
+                    || (c === '>' && '&gt;')
+                    || (c === '&' && '&amp;')
+                    || (c === '"' && '&quot;')
+                    || '&#' + c.charCodeAt() + ';';
+            }
+            function out(text) {
+                parts.push(text);
+                if (parts.length >= PARTS) {
+                    chunks.push(parts.join(''));
+                    parts = [];
+                }
+            }
+            function escape(text, special, all) {
+                if (special.test(text)) {
+                    return text.replace(all, _xmlEncoder);
+                }
+                return text;
+            }
+            function attribute(attr) {
+                out(' ');
+                out(attr.name.toLowerCase());
+                out('="');
+                out(escape(attr.value, /[<&"]/, /[<&"]/g));
+                out('"');
+            }
+            function text(value) {
+                out(escape(String(value), /[<&]/, /[<&]/g));
+            }
+            function children(node, stack) {
+                var child = node.lastChild;
+                while (child) {
+                    stack.push(child);
+                    child = child.previousSibling;
+                }
+            }
+            function serialize(root) {
+                var stack = [root], node, name, attrs, idx, child,
+                    pubid, sysid, sub;
+                while (stack.length > 0) {
+                    node = stack.pop();
+                    if (typeof node === 'string') {
+                        out(node);
+                        continue;
+                    }
+                    switch (node.nodeType) {
+                        case ELEMENT_NODE:
+                            name = node.tagName.toLowerCase();
+                            out('<' + name);
+                            attrs = node.attributes;
+                            for (idx = 0; idx < attrs.length; ++idx) {
+                                attribute(attrs.item(idx));
+                            }
+                            child = node.firstChild;
+                            if (child || (node.namespaceURI === XHTML
+                                && !VOID.test(name))) {
+                                out('>');
+                                if (node.namespaceURI === XHTML
+                                    && name === 'script') {
+                                    if (child) {
+                                        out(child.data);
+                                    }
+                                    out('</' + name + '>');
+                                } else {
+                                    stack.push('</' + name + '>');
+                                    children(node, stack);
+                                }
+                            } else {
+                                out('/>');
+                            }
+                            break;
+                        case DOCUMENT_NODE:
+                        case DOCUMENT_FRAGMENT_NODE:
+                            children(node, stack);
+                            break;
+                        case ATTRIBUTE_NODE:
+                            attribute(node);
+                            break;
+                        case TEXT_NODE:
+                            text(node.data);
+                            break;
+                        case CDATA_SECTION_NODE:
+                            out('<![CDATA[' + node.data + ']]>');
+                            break;
+                        case COMMENT_NODE:
+                            out('<!--' + node.data + '-->');
+                            break;
+                        case DOCUMENT_TYPE_NODE:
+                            pubid = node.publicId;
+                            sysid = node.systemId;
+                            sub = node.internalSubset;
+                            out('<!DOCTYPE ' + node.name);
+                            if (pubid) {
+                                out(' PUBLIC "' + pubid);
+                                if (sysid && sysid !== '.') {
+                                    out('" "' + sysid);
+                                }
+                                out('">');
+                            } else if (sysid && sysid !== '.') {
+                                out(' SYSTEM "' + sysid + '">');
+                            } else {
+                                if (sub) {
+                                    out(' [' + sub + ']');
+                                }
+                                out('>');
+                            }
+                            break;
+                        case PROCESSING_INSTRUCTION_NODE:
+                            out('<?' + node.target + ' ' + node.data + '?>');
+                            break;
+                        case ENTITY_REFERENCE_NODE:
+                            out('&' + node.nodeName.toLowerCase() + ';');
+                            break;
+                        default:
+                            out('??' + node.nodeName);
+                            break;
+                    }
+                }
+            }
+            function matches(query) {
+                var found = [], result, idx;
+                if (typeof query.css === 'string') {
+                    result = document.querySelectorAll(query.css);
+                    for (idx = 0; idx < result.length; ++idx) {
+                        found.push(result[idx]);
+                    }
+                } else {
+                    result = document.evaluate(
+                        query.xpath, document, null,
+                        XPathResult.ANY_TYPE, null
+                    );
+                    if (result.resultType === XPathResult.NUMBER_TYPE) {
+                        found.push(result.numberValue);
+                    } else if (result.resultType === XPathResult.STRING_TYPE) {
+                        found.push(result.stringValue);
+                    } else if (result.resultType === XPathResult.BOOLEAN_TYPE) {
+                        found.push(result.booleanValue);
+                    } else {
+                        result = document.evaluate(
+                            query.xpath, document, null,
+                            XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null
+                        );
+                        for (idx = 0; idx < result.snapshotLength; ++idx) {
+                            found.push(result.snapshotItem(idx));
+                        }
+                    }
+                }
+                out('<matches>');
+                found.forEach(
+                    function (item) {
+                        out('<match>');
+                        if (item !== null && typeof item === 'object') {
+                            if (item.nodeType === ELEMENT_NODE) {
+                                serialize(item);
+                            } else if (item.nodeType === ATTRIBUTE_NODE) {
+                                text(item.value);
+                            } else {
+                                text(item.textContent);
+                            }
+                        } else {
+                            text(item);
+                        }
+                        out('</match>');
+                    }
                 );
+                out('</matches>');
             }
+            try {
+                if (query) {
+                    matches(query);
+                } else {
+                    serialize(document);
+                }
+            } catch (ex) {
+                return {error: String(ex)};
+            }
+            chunks.push(parts.join(''));
+            window.__phandom = chunks;
+            return {chunks: chunks.length};
+        },
+        query
+    );
+    var chunks = [], idx;
+    if (typeof total.error === 'string') {
+        return total;
+    }
+    for (idx = 0; idx < total.chunks; ++idx) {
+        chunks.push(
+            page.evaluate(
+                function (pos) {
+                    var chunk = window.__phandom[pos];
+                    window.__phandom[pos] = null;
+                    return chunk;
+                },
+                idx
+            )
         );
     }
-    stderr('onError: ' + msg + '\n' + stack.join('\n'));
-    failure = true;
-};
-page.onAlert = function(msg) {
-    stderr('onAlert:  ' + msg);
-};
-page.onResourceError = function(resourceError) {
-    stderr(
-        'onResourceError: unable to load resource #'
-        + resourceError.id + ' from "' + resourceError.url + '"'
-    );
-    stderr(
-        'onResourceError: error code #'
-        + resourceError.errorCode + ' with "'
-        + resourceError.errorString + '"'
+    page.evaluate(
+        function () {
+            delete window.__phandom;
+        }
     );
-};
-page.onResourceRequested = function(requestData, networkRequest) {
-    stderr(
-        'onResourceRequested: #' + requestData.id
-        + ' with "' + JSON.stringify(requestData) + '"'
+    return {chunks: chunks};
+}
+
+/**
+ * Compile rules of resource filtering into a function, which tells
+ * whether a URL has to be loaded. The first matching rule wins, URLs
+ * that don't match any rule are loaded. Types of resources are
+ * recognized by extensions.
+ * @param rules Rules, e.g. [{"allow":false,"filter":{"type":"image"}}]
+ * @return Function of URL, which returns TRUE if it has to be loaded
+ * @throws Error If a regular expression of a rule is invalid
+ */
+function filter(rules) {
+    var types = {
+        image: /^data:image\/|\.(png|jpe?g|gif|svg|webp|ico|bmp)$/i,
+        font: /\.(woff2?|ttf|otf|eot)$/i,
+        stylesheet: /\.css$/i,
+        script: /\.js$/i
+    };
+    var compiled = rules.map(
+        function (rule) {
+            var url = null;
+            if (rule.filter.url) {
+                try {
+                    url = new RegExp(rule.filter.url);
+                } catch (ex) {
+                    throw new Error(
+                        'regular expression "' + rule.filter.url
+                        + '": ' + ex.message
+                    );
+                }
+            }
+            return {
+                allow: rule.allow,
+                type: rule.filter.type ? types[rule.filter.type] : null,
+                host: rule.filter.host || null,
+                url: url
+            };
+        }
     );
-};
-page.onLoadStarted = function() {
-    var current = page.evaluate(
-        function() {
-            return window.location.href;
+    return function (url) {
+        var path = url.split(/[?#]/)[0],
+            host = ((/^[a-z]+:\/\/([^\/:?#]+)/i.exec(url) || [])[1] || '')
+                .toLowerCase(),
+            i, rule;
+        for (i = 0; i < compiled.length; ++i) {
+            rule = compiled[i];
+            if ((rule.type && rule.type.test(path))
+                || (rule.host && (host === rule.host
+                    || host.slice(-rule.host.length - 1) === '.' + rule.host))
+                || (rule.url && rule.url.test(url))) {
+                return rule.allow;
+            }
+        }
+        return true;
+    };
+}
+
+/**
+ * Load the page described in JSON, either by its URI, or by its
+ * HTML content (or a file with it) and base URL, and call back with
+ * the loading status.
+ * @param page The page to load into
+ * @param src Description of the page, e.g. {"uri":"file:///tmp/a.html"},
+ *  {"html":"<p>Hey</p>","base":"http://www.example.com/"}
+ *  or {"file":"/tmp/a.html","base":"about:blank"}
+ * @param callback Callback to call with the status
+ */
+function load(page, src, callback) {
+    var html = src.html;
+    if (typeof src.file === 'string') {
+        html = fs.read(src.file);
+    }
+    if (typeof html === 'string') {
+        var loaded = false;
+        if (INFO) {
+            info('HTML: ' + html.length + ' chars at ' + src.base);
+        }
+        page.onLoadFinished = function(status) {
+            if (DEBUG) {
+                debug('onLoadFinished: ' + status);
+            }
+            if (!loaded) {
+                loaded = true;
+                callback(status);
+            }
+        };
+        page.setContent(html, src.base);
+    } else {
+        if (INFO) {
+            info('URL: ' + src.uri);
+        }
+        page.open(src.uri, callback);
+    }
+}
+
+/**
+ * Wait until the page is ready for serialization and call back.
+ * The condition is checked every 50ms, right after loading and until
+ * it is met, see Ready.java:
+ * {"now":true} means no waiting at all,
+ * {"selector":"div.done"} waits for an element matching the selector,
+ * {"idle":500} waits for 500ms without network requests in flight,
+ * {"script":"window.done === true"} waits for a JS expression to be true.
+ * @param page The page
+ * @param cond The condition, e.g. {"selector":"#app"}
+ * @param network Network activity, {"pending":{},"last":1434043834560}
+ * @param callback Callback to call when the page is ready
+ */
+function wait(page, cond, network, callback) {
+    var check;
+    if (typeof cond.selector === 'string') {
+        check = function () {
+            return page.evaluate(
+                function (selector) {
+                    return document.querySelector(selector) !== null;
+                },
+                cond.selector
+            );
+        };
+    } else if (typeof cond.idle === 'number') {
+        check = function () {
+            return Object.keys(network.pending).length === 0
+                && Date.now() - network.last >= cond.idle;
+        };
+    } else if (typeof cond.script === 'string') {
+        check = function () {
+            return page.evaluate(
+                function (script) {
+                    try {
+                        return !!(new Function('return (' + script + ');'))();
+                    } catch (ex) {
+                        return false;
+                    }
+                },
+                cond.script
+            );
+        };
+    } else {
+        check = function () {
+            return true;
+        };
+    }
+    (function poll() {
+        if (check()) {
+            callback();
+        } else {
+            setTimeout(poll, 50);
+        }
+    }());
+}
+
+/**
+ * Apply SETTINGS to the page.
+ * @param page The page
+ */
+function configure(page) {
+    var settings = SETTINGS.settings || {};
+    Object.keys(settings).forEach(
+        function (key) {
+            page.settings[key] = settings[key];
         }
     );
-    stderr('onLoadStarted: current page ' + current + ' will disappear...');
-    stderr('onLoadStarted: now loading a new page...');
-};
-page.onLoadFinished = function(status) {
-    stderr('onLoadFinished: status=' + status);
-};
-stderr('URL to render: ' + system.args[1]);
-page.open(
-    system.args[1],
-    function (status) {
-        if (failure) {
-            stderr('javascript errors, see log above');
-            phantom.exit(1);
+    if (SETTINGS.viewport) {
+        page.viewportSize = SETTINGS.viewport;
+    }
+}
+
+/**
+ * Render one page and call back with status, chunks of XHTML and
+ * statistics. Status is zero on success, one on javascript errors
+ * (the only chunk is the message when rules of filtering can't be
+ * compiled), two on loading failure and three on timeout (the only
+ * chunk is the name of the phase in this case). Statistics are
+ * milliseconds spent in phases and numbers of resources, e.g.
+ * "load=120 ready=0 serialize=8 loaded=4 blocked=1", see Probe.java.
+ * @param src Description of the page, see load()
+ * @param options Options of rendering, e.g. {"timeout":5000}
+ * @param done Callback to call with status, XHTML and statistics
+ * @param keep TRUE to keep the page open and not serialize it, in this
+ *  case the callback gets the context: {"page":..,"network":..}
+ */
+function render(src, options, done, keep) {
+    var page;
+    quota = QUOTA;
+    dropped = 0;
+    page = webpage.create();
+    configure(page);
+    var failure = false;
+    var current = '';
+    var since = Date.now();
+    var times = {};
+    var finished = false;
+    var timer = null;
+    var rules = options.rules || [];
+    var allowed = null;
+    var loaded = 0;
+    var blocked = 0;
+    var network = {pending: {}, last: Date.now()};
+    function settle(id) {
+        delete network.pending[id];
+        network.last = Date.now();
+    }
+    function enter(name) {
+        var now = Date.now();
+        if (current) {
+            times[current] = (times[current] || 0) + now - since;
         }
-        if (status !== 'success') {
-            stderr('page loading status is "' + status + '"');
-            phantom.exit(2);
+        current = name;
+        since = now;
+        phase(name);
+    }
+    function stats() {
+        var all = [];
+        if (current) {
+            times[current] = (times[current] || 0) + Date.now() - since;
         }
-        console.log(
-            page.evaluate(
+        Object.keys(times).forEach(
+            function (name) {
+                all.push(name + '=' + times[name]);
+            }
+        );
+        all.push('loaded=' + loaded, 'blocked=' + blocked);
+        return all.join(' ');
+    }
+    function finish(code, xml) {
+        if (!finished) {
+            finished = true;
+            if (timer !== null) {
+                clearTimeout(timer);
+            }
+            if (!keep || code !== 0) {
+                page.close();
+            }
+            if (dropped > 0) {
+                record('I', dropped + ' diagnostic records dropped');
+            }
+            done(code, xml, stats(), {page: page, network: network});
+        }
+    }
+    try {
+        allowed = filter(rules);
+    } catch (ex) {
+        error('invalid rules of filtering: ' + ex.message);
+        finish(1, ['invalid rules of filtering: ' + ex.message]);
+        return;
+    }
+    if (options.timeout > 0) {
+        page.settings.resourceTimeout = options.timeout;
+        timer = setTimeout(
+            function () {
+                error(
+                    'timeout of ' + options.timeout + 'ms in phase '
+                    + current
+                );
+                finish(3, [current]);
+            },
+            options.timeout
+        );
+    }
+    page.onConsoleMessage = function (msg) {
+        if (DEBUG) {
+            debug('console: ' + msg);
+        }
+    };
+    page.onError = function(msg, trace) {
+        var stack = [];
+        if (trace && trace.length) {
+            trace.forEach(
+                function (t) {
+                    stack.push(
+                        '  ' + t.file + ': ' + t.line
+                        + (t['function'] ? ' (in ' + t['function'] + ')' : '')
+                    );
+                }
+            );
+        }
+        error(
+            'onError: ' + msg + (stack.length ? '\n' : '')
+            + stack.join('\n')
+        );
+        failure = true;
+    };
+    page.onAlert = function(msg) {
+        if (DEBUG) {
+            debug('onAlert: ' + msg);
+        }
+    };
+    page.onResourceError = function(resourceError) {
+        settle(resourceError.id);
+        if (INFO) {
+            info(
+                'onResourceError: #' + resourceError.id
+                + ' ' + resourceError.url
+                + ' code=' + resourceError.errorCode
+                + ' "' + resourceError.errorString + '"'
+            );
+        }
+    };
+    page.onResourceRequested = function(requestData, networkRequest) {
+        if (!(src.uri && requestData.id === 1)
+            && !allowed(requestData.url)) {
+            if (DEBUG) {
+                debug(
+                    'onResourceRequested: #' + requestData.id
+                    + ' ' + requestData.url + ' blocked'
+                );
+            }
+            blocked += 1;
+            networkRequest.abort();
+        } else {
+            if (DEBUG) {
+                debug(
+                    'onResourceRequested: #' + requestData.id
+                    + ' ' + requestData.method + ' ' + requestData.url
+                );
+            }
+            network.pending[requestData.id] = true;
+            network.last = Date.now();
+        }
+    };
+    page.onResourceReceived = function(response) {
+        if (response.stage === 'end') {
+            settle(response.id);
+            loaded += 1;
+        }
+    };
+    page.onLoadStarted = function() {
+        if (DEBUG) {
+            debug('onLoadStarted: leaving ' + page.url);
+        }
+    };
+    page.onLoadFinished = function(status) {
+        if (DEBUG) {
+            debug('onLoadFinished: ' + status);
+        }
+    };
+    enter('load');
+    load(
+        page,
+        src,
+        function (status) {
+            if (finished) {
+                return;
+            }
+            if (status !== 'success') {
+                error('page loading status is "' + status + '"');
+                finish(failure ? 1 : 2, []);
+                return;
+            }
+            enter('ready');
+            wait(
+                page,
+                options.ready || {now: true},
+                network,
                 function () {
-                    /**
-                    * borrowed from https://github.com/jindw/xmldom
-                    */
-                    var ELEMENT_NODE = 1,
-                        ATTRIBUTE_NODE = 2,
-                        TEXT_NODE = 3,
-                        CDATA_SECTION_NODE = 4,
-                        ENTITY_REFERENCE_NODE = 5,
-                        ENTITY_NODE = 6,
-                        PROCESSING_INSTRUCTION_NODE = 7,
-                        COMMENT_NODE = 8,
-                        DOCUMENT_NODE = 9,
-                        DOCUMENT_TYPE_NODE = 10,
-                        DOCUMENT_FRAGMENT_NODE = 11,
-                        NOTATION_NODE = 12,
-                        buf = [];
-                    function _xmlEncoder(c) {
-                        return (c === '<' && '&lt;')
-                            || (c === '>' && '&gt;')
-                            || (c === '&' && '&amp;')
-                            || (c === '"' && '&quot;')
-                            || '&#' + c.charCodeAt() + ';';
+                    var xml = [], code = 0, result;
+                    if (finished) {
+                        return;
                     }
-                    function serialize(node, buf) {
-                        var attrs = node.attributes,
-                            len = attrs ? attrs.length : 0,
-                            child = node.firstChild,
-                            nodeName = node.tagName,
-                            isHTML = 'http://www.w3.org/1999/xhtml' === node.namespaceURI,
-                            i = 0,
-                            pubid = node.publicId,
-                            sysid = node.systemId,
-                            sub = node.internalSubset;
-                        switch (node.nodeType) {
-                            case ELEMENT_NODE:
-                                buf.push('<', nodeName.toLowerCase());
-                                for (; i < len; i++) {
-                                    serialize(attrs.item(i), buf, isHTML);
-                                }
-                                if (child || (isHTML && !/^(?:meta|link|img|br|hr|input)$/i.test(nodeName))) {
-                                    buf.push('>');
-                                    if (isHTML && /^script$/i.test(nodeName)) {
-                                        if (child) {
-                                            buf.push(child.data);
-                                        }
-                                    } else {
-                                        while (child) {
-                                            serialize(child, buf);
-                                            child = child.nextSibling;
-                                        }
-                                    }
-                                    buf.push('</', nodeName.toLowerCase(), '>');
-                                } else {
-                                    buf.push('/>');
-                                }
-                                break;
-                            case DOCUMENT_NODE:
-                            case DOCUMENT_FRAGMENT_NODE:
-                                while (child) {
-                                    serialize(child, buf);
-                                    child = child.nextSibling;
-                                }
-                                break;
-                            case ATTRIBUTE_NODE:
-                                buf.push(
-                                    ' ',
-                                    node.name.toLowerCase(), '="' ,
-                                    node.value.replace(/[<&"]/g,_xmlEncoder),
-                                    '"'
+                    if (failure) {
+                        error('javascript errors, see log above');
+                        code = 1;
+                    } else if (!keep) {
+                        enter('serialize');
+                        result = serialize(page, options.query || null);
+                        if (typeof result.error === 'string') {
+                            error('query failed: ' + result.error);
+                            code = 1;
+                        } else {
+                            xml = result.chunks;
+                            if (rules.length > 0) {
+                                xml.push(
+                                    '<?phandom loaded="' + loaded
+                                    + '" blocked="' + blocked + '"?>'
                                 );
-                                break;
-                            case TEXT_NODE:
-                                buf.push(node.data.replace(/[<&]/g,_xmlEncoder));
-                                break;
-                            case CDATA_SECTION_NODE:
-                                buf.push('<![CDATA[', node.data, ']]>');
-                                break;
-                            case COMMENT_NODE:
-                                buf.push("<!--", node.data, "-->");
-                                break;
-                            case DOCUMENT_TYPE_NODE:
-                                buf.push('<!DOCTYPE ', node.name);
-                                if (pubid) {
-                                    buf.push(' PUBLIC "', pubid);
-                                    if (sysid && sysid !== '.') {
-                                        buf.push( '" "', sysid);
-                                    }
-                                    buf.push('">');
-                                } else if (sysid && sysid !== '.') {
-                                    buf.push(' SYSTEM "', sysid, '">');
-                                } else {
-                                    if (sub) {
-                                        buf.push(' [', sub, ']');
-                                    }
-                                    buf.push('>');
-                                }
-                                break;
-                            case PROCESSING_INSTRUCTION_NODE:
-                                buf.push("<?", node.target, " ", node.data, "?>");
-                                break;
-                            case ENTITY_REFERENCE_NODE:
-                                buf.push('&', node.nodeName.toLowerCase(), ';');
-                                break;
-                            //case ENTITY_NODE:
-                            //case NOTATION_NODE:
-                            default:
-                                buf.push('??', node.nodeName);
-                                break;
+                            }
                         }
                     }
-                    serialize(document, buf);
-                    return buf.join('');
+                    finish(code, xml);
                 }
-            )
+            );
+        }
+    );
+}
+
+/**
+ * Worker mode: read JSON jobs from stdin, one per line, and write
+ * each result to stdout followed by a line with job ID, status and
+ * statistics, e.g. {"id":"f81d4fae","page":{"uri":"http://a.com/"}}
+ * leads to "f81d4fae 0 load=120 serialize=8 loaded=4 blocked=0 output=1".
+ */
+function work() {
+    if (system.stdin.atEnd()) {
+        phantom.exit(0);
+        return;
+    }
+    var line = system.stdin.readLine();
+    if (!line) {
+        phantom.exit(0);
+        return;
+    }
+    var job = JSON.parse(line);
+    render(
+        job.page,
+        job.options || {},
+        function (code, xml, stats) {
+            reply(job.id, code, xml, stats);
+            setTimeout(work, 0);
+        }
+    );
+}
+
+/**
+ * Write one result to stdout, followed by a line with its ID, status
+ * and statistics, see work().
+ * @param id ID of the job or command
+ * @param code Status code
+ * @param xml Chunks of the result
+ * @param stats Statistics
+ */
+function reply(id, code, xml, stats) {
+    var before = Date.now();
+    phase('output');
+    xml.forEach(
+        function (chunk) {
+            system.stdout.write(chunk);
+        }
+    );
+    system.stdout.write('\n');
+    system.stdout.flush();
+    system.stdout.write(
+        id + ' ' + code + ' ' + stats
+        + ' output=' + (Date.now() - before) + '\n'
+    );
+    system.stdout.flush();
+}
+
+/**
+ * Session mode: the first line of stdin is a job, like in worker mode,
+ * its page is loaded and kept open. The next lines are commands to run
+ * against it, one by one, until the end of stdin, see Session.java:
+ * {"id":"a1","cmd":"dom"} serializes the page,
+ * {"id":"a2","cmd":"query","query":{"css":"p"}} serializes matches,
+ * {"id":"a3","cmd":"eval","script":"document.title"} returns the value,
+ * {"id":"a4","cmd":"click","css":"#go"} clicks the element,
+ * {"id":"a5","cmd":"type","css":"#q","text":"hey"} sets its value,
+ * {"id":"a6","cmd":"ready","ready":{"selector":"#done"},"timeout":500}
+ * waits, with a timeout in milliseconds, zero means no timeout.
+ * Results are written like in worker mode; on failure the status is one
+ * and the result is the error message.
+ */
+function session() {
+    var job = JSON.parse(system.stdin.readLine());
+    var options = job.options || {};
+    render(
+        job.page,
+        options,
+        function (code, xml, stats, context) {
+            reply(job.id, code, xml, stats);
+            if (code === 0) {
+                setTimeout(
+                    function () {
+                        serve(context);
+                    },
+                    0
+                );
+            } else {
+                phantom.exit(0);
+            }
+        },
+        true
+    );
+}
+
+/**
+ * Run session commands from stdin, see session().
+ * @param context Context of the page: {"page":..,"network":..}
+ */
+function serve(context) {
+    var line, cmd, result, timer = null, answered = false;
+    if (system.stdin.atEnd()) {
+        context.page.close();
+        phantom.exit(0);
+        return;
+    }
+    line = system.stdin.readLine();
+    if (!line) {
+        context.page.close();
+        phantom.exit(0);
+        return;
+    }
+    cmd = JSON.parse(line);
+    function answer(code, xml) {
+        if (!answered) {
+            answered = true;
+            if (timer !== null) {
+                clearTimeout(timer);
+            }
+            reply(cmd.id, code, xml, '');
+            setTimeout(
+                function () {
+                    serve(context);
+                },
+                0
+            );
+        }
+    }
+    if (INFO) {
+        info('session command: ' + cmd.cmd);
+    }
+    if (cmd.cmd === 'ready') {
+        if (cmd.timeout > 0) {
+            timer = setTimeout(
+                function () {
+                    error('timeout of ' + cmd.timeout + 'ms in session');
+                    answer(3, ['ready']);
+                },
+                cmd.timeout
+            );
+        }
+        wait(
+            context.page,
+            cmd.ready,
+            context.network,
+            function () {
+                answer(0, []);
+            }
         );
-        // see http://stackoverflow.com/questions/22872162
-        setTimeout(function() { phantom.exit(0); }, 100);
+        return;
+    }
+    if (cmd.cmd === 'dom' || cmd.cmd === 'query') {
+        result = serialize(context.page, cmd.query || null);
+    } else {
+        result = context.page.evaluate(
+            function (cmd) {
+                var element, event;
+                try {
+                    if (cmd.cmd === 'eval') {
+                        element = (new Function(
+                            'return (' + cmd.script + ');'
+                        ))();
+                        if (element === undefined || element === null) {
+                            return {chunks: ['']};
+                        }
+                        return {chunks: [String(element)]};
+                    }
+                    element = document.querySelector(cmd.css);
+                    if (element === null) {
+                        return {error: 'nothing matches "' + cmd.css + '"'};
+                    }
+                    if (cmd.cmd === 'type') {
+                        element.value = cmd.text;
+                        event = document.createEvent('HTMLEvents');
+                        event.initEvent('input', true, true);
+                        element.dispatchEvent(event);
+                        event = document.createEvent('HTMLEvents');
+                        event.initEvent('change', true, true);
+                        element.dispatchEvent(event);
+                    } else if (cmd.cmd === 'click') {
+                        event = document.createEvent('MouseEvents');
+                        event.initMouseEvent(
+                            'click', true, true, window, 1, 0, 0, 0, 0,
+                            false, false, false, false, 0, null
+                        );
+                        element.dispatchEvent(event);
+                    } else {
+                        return {error: 'unknown command "' + cmd.cmd + '"'};
+                    }
+                    return {chunks: []};
+                } catch (ex) {
+                    return {error: String(ex)};
+                }
+            },
+            cmd
+        );
+    }
+    if (typeof result.error === 'string') {
+        error(cmd.cmd + ' failed: ' + result.error);
+        answer(1, [result.error.replace(/\n/g, ' ')]);
+    } else {
+        answer(0, result.chunks);
     }
-);
+}
+
+/**
+ * Print the result of a single page and exit, reporting statistics
+ * to stderr in a record of kind M, see Stderr.java.
+ * @param code Status code
+ * @param xml Chunks of XHTML
+ * @param stats Statistics
+ */
+function print(code, xml, stats) {
+    var before = Date.now();
+    if (code !== 0) {
+        record('M', stats);
+        phantom.exit(code);
+        return;
+    }
+    phase('output');
+    xml.forEach(
+        function (chunk) {
+            system.stdout.write(chunk);
+        }
+    );
+    system.stdout.write('\n');
+    system.stdout.flush();
+    record('M', stats + ' output=' + (Date.now() - before));
+    phantom.exit(0);
+}
+
+if (system.args[1] === '--worker') {
+    work();
+} else if (system.args[1] === '--session') {
+    session();
+} else if (system.args[1] === '--stdin') {
+    (function (job) {
+        render(job.page, job.options || {}, print);
+    }(JSON.parse(system.stdin.read())));
+} else {
+    render(
+        {uri: system.args[1]},
+        {},
+        function (code, xml, stats) {
+            if (system.args.length > 2 && fs.exists(system.args[2])) {
+                fs.remove(system.args[2]);
+            }
+            print(code, xml, stats);
+        }
+    );
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Binary}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class BinaryTest {
+
+    /**
+     * Binary can probe the binary only once.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void probesOnlyOnce() throws Exception {
+        MatcherAssert.assertThat(
+            Binary.current(),
+            Matchers.sameInstance(Binary.current())
+        );
+    }
+
+    /**
+     * Binary can detect an absent binary.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void detectsAbsentBinary() throws Exception {
+        final Binary before = Binary.current();
+        try {
+            final Binary binary = Binary.use("/not/existing/phantomjs");
+            MatcherAssert.assertThat(binary.installed(), Matchers.is(false));
+            MatcherAssert.assertThat(
+                binary.version(), Matchers.isEmptyString()
+            );
+            MatcherAssert.assertThat(binary.supports(1, 0), Matchers.is(false));
+            MatcherAssert.assertThat(
+                Binary.current(), Matchers.sameInstance(binary)
+            );
+        } finally {
+            Binary.use(before.path());
+        }
+    }
+
+    /**
+     * Binary can compare versions.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void comparesVersions() throws Exception {
+        final Binary binary = Binary.current();
+        if (binary.installed()) {
+            MatcherAssert.assertThat(binary.supports(1, 9), Matchers.is(true));
+            MatcherAssert.assertThat(
+                binary.supports(Integer.MAX_VALUE, 0), Matchers.is(false)
+            );
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test case for {@link Cache}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class CacheTest {
+
+    /**
+     * Temporary folder.
+     * @checkstyle VisibilityModifier (3 lines)
+     */
+    @Rule
+    public transient TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Cache can render the same text only once.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rendersSameTextOnce() throws Exception {
+        final AtomicInteger total = new AtomicInteger();
+        final Cache cache = new Cache(new CacheTest.Fake(total), 2);
+        for (int idx = 0; idx < 3; ++idx) {
+            MatcherAssert.assertThat(
+                cache.render(new Page.Text("<p>hello</p>"), new Options()),
+                Matchers.equalTo("<p>hello</p>")
+            );
+        }
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(cache.hits(), Matchers.equalTo(2L));
+        MatcherAssert.assertThat(cache.misses(), Matchers.equalTo(1L));
+    }
+
+    /**
+     * Cache can evict least recently used pages.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        final AtomicInteger total = new AtomicInteger();
+        final Cache cache = new Cache(new CacheTest.Fake(total), 2);
+        cache.render(new Page.Text("a"), new Options());
+        cache.render(new Page.Text("b"), new Options());
+        cache.render(new Page.Text("a"), new Options());
+        cache.render(new Page.Text("c"), new Options());
+        cache.render(new Page.Text("a"), new Options());
+        cache.render(new Page.Text("b"), new Options());
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(4));
+        MatcherAssert.assertThat(cache.evictions(), Matchers.equalTo(2L));
+    }
+
+    /**
+     * Cache can keep pages on disk.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsPagesOnDisk() throws Exception {
+        final File dir = this.temp.newFolder();
+        final AtomicInteger total = new AtomicInteger();
+        new Cache(new CacheTest.Fake(total), 1, dir).render(
+            new Page.Text("<b>disk</b>"), new Options()
+        );
+        final Cache cache = new Cache(new CacheTest.Fake(total), 1, dir);
+        MatcherAssert.assertThat(
+            cache.render(new Page.Text("<b>disk</b>"), new Options()),
+            Matchers.equalTo("<b>disk</b>")
+        );
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(cache.hits(), Matchers.equalTo(1L));
+    }
+
+    /**
+     * Cache can delete least recently used pages from disk.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void deletesOldPagesFromDisk() throws Exception {
+        final File dir = this.temp.newFolder();
+        final AtomicInteger total = new AtomicInteger();
+        final Cache cache = new Cache(new CacheTest.Fake(total), 1, dir, 2);
+        cache.render(new Page.Text("x"), new Options());
+        cache.render(new Page.Text("y"), new Options());
+        cache.render(new Page.Text("x"), new Options());
+        cache.render(new Page.Text("z"), new Options());
+        MatcherAssert.assertThat(dir.list().length, Matchers.equalTo(2));
+        new Cache(new CacheTest.Fake(total), 1, dir, 2).render(
+            new Page.Text("x"), new Options()
+        );
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(3));
+    }
+
+    /**
+     * Cache can tell pages rendered with different launches.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void separatesLaunches() throws Exception {
+        final File dir = this.temp.newFolder();
+        final AtomicInteger total = new AtomicInteger();
+        new Cache(new CacheTest.Fake(total, new Launch()), 1, dir).render(
+            new Page.Text("<i>launch</i>"), new Options()
+        );
+        new Cache(
+            new CacheTest.Fake(total, new Launch().images(false)), 1, dir
+        ).render(new Page.Text("<i>launch</i>"), new Options());
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(2));
+    }
+
+    /**
+     * Fake engine, which returns the content of text pages.
+     */
+    private static final class Fake implements Engine, Launch.Source {
+        /**
+         * Counter of renders.
+         */
+        private final transient AtomicInteger total;
+        /**
+         * Options of processes, or NULL.
+         */
+        private final transient Launch options;
+        /**
+         * Ctor.
+         * @param counter Counter of renders
+         */
+        Fake(final AtomicInteger counter) {
+            this(counter, null);
+        }
+        /**
+         * Ctor.
+         * @param counter Counter of renders
+         * @param launch Options of processes, or NULL
+         */
+        Fake(final AtomicInteger counter, final Launch launch) {
+            this.total = counter;
+            this.options = launch;
+        }
+        @Override
+        public Launch launch() {
+            return this.options;
+        }
+        @Override
+        public String render(final Page page, final Options options)
+            throws IOException {
+            this.total.incrementAndGet();
+            return Page.Text.class.cast(page).html();
+        }
+        @Override
+        public InputStream stream(final Page page, final Options options)
+            throws IOException {
+            return IOUtils.toInputStream(
+                this.render(page, options), CharEncoding.UTF_8
+            );
+        }
+    }
+
+}
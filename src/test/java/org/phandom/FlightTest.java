@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Flight}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class FlightTest {
+
+    /**
+     * Flight can share one render between concurrent requests.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sharesRenderInFlight() throws Exception {
+        final int threads = 4;
+        final AtomicInteger total = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Flight flight = new Flight(new FlightTest.Slow(total, gate));
+        final ExecutorService svc = Executors.newFixedThreadPool(threads);
+        try {
+            final Collection<Future<String>> results =
+                new ArrayList<Future<String>>(threads);
+            for (int idx = 0; idx < threads; ++idx) {
+                results.add(
+                    svc.submit(
+                        new Callable<String>() {
+                            @Override
+                            public String call() throws IOException {
+                                return flight.render(
+                                    new Page.Text("<p>same</p>"),
+                                    new Options()
+                                );
+                            }
+                        }
+                    )
+                );
+            }
+            final long start = System.currentTimeMillis();
+            while (flight.saved() < threads - 1L
+                && System.currentTimeMillis() - start
+                < TimeUnit.SECONDS.toMillis(1L)) {
+                TimeUnit.MILLISECONDS.sleep(1L);
+            }
+            gate.countDown();
+            for (final Future<String> result : results) {
+                MatcherAssert.assertThat(
+                    result.get(1L, TimeUnit.MINUTES),
+                    Matchers.equalTo("<p>same</p>")
+                );
+            }
+        } finally {
+            svc.shutdownNow();
+        }
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(flight.renders(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(
+            flight.saved(), Matchers.equalTo(threads - 1L)
+        );
+    }
+
+    /**
+     * Flight can give every request its own exception of a failed render.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void failsEveryRequestOnItsOwn() throws Exception {
+        final int threads = 3;
+        final AtomicInteger total = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Flight flight = new Flight(new FlightTest.Slow(total, gate));
+        final ExecutorService svc = Executors.newFixedThreadPool(threads);
+        final Set<Throwable> errors = Collections.newSetFromMap(
+            new IdentityHashMap<Throwable, Boolean>(threads)
+        );
+        try {
+            final Collection<Future<InputStream>> results =
+                new ArrayList<Future<InputStream>>(threads);
+            for (int idx = 0; idx < threads; ++idx) {
+                results.add(
+                    svc.submit(
+                        new Callable<InputStream>() {
+                            @Override
+                            public InputStream call() throws IOException {
+                                return flight.stream(
+                                    new Page.Text("<i>broken</i>"),
+                                    new Options()
+                                );
+                            }
+                        }
+                    )
+                );
+            }
+            final long start = System.currentTimeMillis();
+            while (flight.saved() < threads - 1L
+                && System.currentTimeMillis() - start
+                < TimeUnit.SECONDS.toMillis(1L)) {
+                TimeUnit.MILLISECONDS.sleep(1L);
+            }
+            gate.countDown();
+            for (final Future<InputStream> result : results) {
+                try {
+                    result.get(1L, TimeUnit.MINUTES).close();
+                    Assert.fail("a broken page should fail every request");
+                } catch (final ExecutionException ex) {
+                    MatcherAssert.assertThat(
+                        ex.getCause().getMessage(),
+                        Matchers.containsString("broken")
+                    );
+                    errors.add(ex.getCause());
+                }
+            }
+        } finally {
+            svc.shutdownNow();
+        }
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(1));
+        MatcherAssert.assertThat(errors.size(), Matchers.equalTo(threads));
+    }
+
+    /**
+     * Flight can render again, when the previous render is over.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rendersAgainAfterFlight() throws Exception {
+        final AtomicInteger total = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(0);
+        final Flight flight = new Flight(new FlightTest.Slow(total, gate));
+        flight.render(new Page.Text("<b>x</b>"), new Options());
+        final InputStream input = flight.stream(
+            new Page.Text("<b>x</b>"), new Options()
+        );
+        try {
+            MatcherAssert.assertThat(
+                IOUtils.toString(input, CharEncoding.UTF_8),
+                Matchers.equalTo("<b>x</b>")
+            );
+        } finally {
+            input.close();
+        }
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(flight.saved(), Matchers.equalTo(0L));
+    }
+
+    /**
+     * Fake engine, which returns the content of text pages, when
+     * the gate is open, and fails on broken ones.
+     */
+    private static final class Slow implements Engine {
+        /**
+         * Counter of renders.
+         */
+        private final transient AtomicInteger total;
+        /**
+         * The gate.
+         */
+        private final transient CountDownLatch gate;
+        /**
+         * Ctor.
+         * @param counter Counter of renders
+         * @param latch The gate
+         */
+        Slow(final AtomicInteger counter, final CountDownLatch latch) {
+            this.total = counter;
+            this.gate = latch;
+        }
+        @Override
+        public String render(final Page page, final Options options)
+            throws IOException {
+            this.total.incrementAndGet();
+            try {
+                this.gate.await();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            }
+            final String html = Page.Text.class.cast(page).html();
+            if (html.contains("broken")) {
+                throw new IOException(String.format("%s is broken", html));
+            }
+            return html;
+        }
+        @Override
+        public InputStream stream(final Page page, final Options options)
+            throws IOException {
+            return IOUtils.toInputStream(
+                this.render(page, options), CharEncoding.UTF_8
+            );
+        }
+    }
+
+}
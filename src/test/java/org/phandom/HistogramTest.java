@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.InputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Histogram}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class HistogramTest {
+
+    /**
+     * Histogram can collect phases reported by dom.js.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void collectsPhases() throws Exception {
+        final Histogram histogram = new Histogram();
+        for (int idx = 1; idx <= 100; ++idx) {
+            final Probe probe = new Probe();
+            probe.stats(
+                String.format("load=%d serialize=3 loaded=4 blocked=1", idx)
+            );
+            probe.exit(0);
+            probe.report(histogram);
+        }
+        MatcherAssert.assertThat(
+            histogram.metrics(),
+            Matchers.hasItems("load", "serialize", "loaded", "total")
+        );
+        MatcherAssert.assertThat(histogram.count("load"), Matchers.is(100L));
+        MatcherAssert.assertThat(histogram.sum("load"), Matchers.is(5050L));
+        MatcherAssert.assertThat(histogram.max("load"), Matchers.is(100L));
+        MatcherAssert.assertThat(
+            histogram.percentile("load", 0.5d), Matchers.is(63L)
+        );
+        MatcherAssert.assertThat(
+            histogram.percentile("load", 1.0d), Matchers.is(100L)
+        );
+        MatcherAssert.assertThat(
+            histogram.sum("blocked"), Matchers.is(100L)
+        );
+        MatcherAssert.assertThat(histogram.exits(0), Matchers.is(100L));
+    }
+
+    /**
+     * Histogram can count zeros and failures.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void countsZerosAndFailures() throws Exception {
+        final Histogram histogram = new Histogram();
+        final Probe probe = new Probe();
+        probe.stats("load=0");
+        probe.report(histogram);
+        MatcherAssert.assertThat(
+            histogram.percentile("load", 0.99d), Matchers.is(0L)
+        );
+        MatcherAssert.assertThat(histogram.exits(-1), Matchers.is(1L));
+        MatcherAssert.assertThat(
+            histogram.toString(), Matchers.containsString("load: n=1")
+        );
+    }
+
+    /**
+     * Histogram can get the parse phase when the XHTML is consumed.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void collectsParsePhase() throws Exception {
+        final Histogram histogram = new Histogram();
+        final Probe probe = new Probe();
+        probe.stats("load=5");
+        probe.exit(0);
+        final InputStream input = probe.report(
+            IOUtils.toInputStream("<p/>", CharEncoding.UTF_8), histogram
+        );
+        MatcherAssert.assertThat(histogram.count("load"), Matchers.is(0L));
+        MatcherAssert.assertThat(
+            IOUtils.toString(input, CharEncoding.UTF_8),
+            Matchers.equalTo("<p/>")
+        );
+        input.close();
+        input.close();
+        MatcherAssert.assertThat(histogram.count("load"), Matchers.is(1L));
+        MatcherAssert.assertThat(histogram.count("parse"), Matchers.is(1L));
+    }
+
+}
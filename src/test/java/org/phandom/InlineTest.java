@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Inline}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class InlineTest {
+
+    /**
+     * Inline can convert static markup without the original engine.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void convertsStaticMarkup() throws Exception {
+        final AtomicInteger total = new AtomicInteger();
+        final Engine engine = new Inline(new InlineTest.Fake(total));
+        MatcherAssert.assertThat(
+            engine.render(new Page.Text("<p>static</p>"), new Options()),
+            Matchers.containsString("<body><p>static</p></body>")
+        );
+        final InputStream input = engine.stream(
+            new Page.Text("<p>stream</p>"), new Options()
+        );
+        try {
+            MatcherAssert.assertThat(
+                IOUtils.toString(input, CharEncoding.UTF_8),
+                Matchers.containsString("<body><p>stream</p></body>")
+            );
+        } finally {
+            input.close();
+        }
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(0));
+    }
+
+    /**
+     * Inline can pass pages that need a browser to the original engine.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void passesOtherPagesToEngine() throws Exception {
+        final AtomicInteger total = new AtomicInteger();
+        final Engine engine = new Inline(new InlineTest.Fake(total));
+        MatcherAssert.assertThat(
+            engine.render(
+                new Page.Text("<p onclick='go()'>script</p>"), new Options()
+            ),
+            Matchers.equalTo("<rendered/>")
+        );
+        MatcherAssert.assertThat(
+            engine.render(
+                new Page.Text("<p>later</p>"),
+                new Options().ready(new Ready.Selector("p"))
+            ),
+            Matchers.equalTo("<rendered/>")
+        );
+        MatcherAssert.assertThat(total.get(), Matchers.equalTo(2));
+    }
+
+    /**
+     * Fake engine, which counts renders.
+     */
+    private static final class Fake implements Engine {
+        /**
+         * Counter of renders.
+         */
+        private final transient AtomicInteger total;
+        /**
+         * Ctor.
+         * @param counter Counter of renders
+         */
+        Fake(final AtomicInteger counter) {
+            this.total = counter;
+        }
+        @Override
+        public String render(final Page page, final Options options) {
+            this.total.incrementAndGet();
+            return "<rendered/>";
+        }
+        @Override
+        public InputStream stream(final Page page, final Options options)
+            throws IOException {
+            return IOUtils.toInputStream(
+                this.render(page, options), CharEncoding.UTF_8
+            );
+        }
+    }
+
+}
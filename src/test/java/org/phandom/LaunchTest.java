@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.File;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Launch}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class LaunchTest {
+
+    /**
+     * Launch can build switches of phantomjs.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void buildsSwitches() throws Exception {
+        MatcherAssert.assertThat(
+            new Launch().switches(),
+            Matchers.<String>empty()
+        );
+        final File dir = new File("cache");
+        MatcherAssert.assertThat(
+            new Launch()
+                .images(false)
+                .insecure(true)
+                .cache(dir, 1L << 20)
+                .switches(),
+            Matchers.hasItems(
+                "--load-images=false",
+                "--ignore-ssl-errors=true",
+                "--disk-cache=true",
+                "--max-disk-cache-size=1024"
+            )
+        );
+        MatcherAssert.assertThat(
+            new Launch().proxy("127.0.0.1:8080").switches(),
+            Matchers.contains("--proxy=127.0.0.1:8080", "--proxy-type=http")
+        );
+        MatcherAssert.assertThat(
+            new Launch().storage(dir).switches(),
+            Matchers.contains(
+                String.format(
+                    "--local-storage-path=%s", dir.getAbsolutePath()
+                )
+            )
+        );
+    }
+
+    /**
+     * Launch can describe settings of pages in JSON.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void describesSettings() throws Exception {
+        MatcherAssert.assertThat(
+            new Launch().settings(),
+            Matchers.equalTo("{\"settings\":{}}")
+        );
+        MatcherAssert.assertThat(
+            new Launch().agent("Bot \"1\"").viewport(1280, 1024).settings(),
+            Matchers.equalTo(
+                // @checkstyle LineLength (1 line)
+                "{\"settings\":{\"userAgent\":\"Bot \\\"1\\\"\"},\"viewport\":{\"width\":1280,\"height\":1024}}"
+            )
+        );
+    }
+
+    /**
+     * Launch can reject a wrong viewport.
+     * @throws Exception If some problem inside
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyViewport() throws Exception {
+        new Launch().viewport(0, 768);
+    }
+
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import org.apache.commons.lang3.StringUtils;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Markup}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class MarkupTest {
+
+    /**
+     * Static pages, together with XHTML they turn into in PhantomJS.
+     */
+    private static final String[][] PAGES = {
+        {
+            "<p>hi</p>",
+            "<html><head></head><body><p>hi</p></body></html>",
+        },
+        {
+            StringUtils.join(
+                "<!DOCTYPE html>\n<HTML lang=en><head>\n",
+                "<title>a &amp; b</title>\n<META charset='utf-8'>\n",
+                "</head>\n<body class=x><br><img src=\"a.png\" alt=''>",
+                "<hr/></body></html>\n"
+            ),
+            StringUtils.join(
+                "<!DOCTYPE html><html lang=\"en\"><head>\n",
+                "<title>a &amp; b</title>\n<meta charset=\"utf-8\"/>\n",
+                "</head>\n<body class=\"x\"><br/><img src=\"a.png\" alt=\"\"/>",
+                "<hr/>\n</body></html>"
+            ),
+        },
+        {
+            "<ul><li>one<li>two</ul><p>x<div>y</div><dl><dt>a<dd>b</dl>",
+            StringUtils.join(
+                "<html><head></head><body><ul><li>one</li><li>two</li></ul>",
+                "<p>x</p><div>y</div><dl><dt>a</dt><dd>b</dd></dl>",
+                "</body></html>"
+            ),
+        },
+        {
+            "<table>\n<tr><th>1<td>2\n<tr><td>3</table>",
+            StringUtils.join(
+                "<html><head></head><body><table>\n<tbody><tr><th>1</th>",
+                "<td>2\n</td></tr><tr><td>3</td></tr></tbody></table>",
+                "</body></html>"
+            ),
+        },
+        {
+            StringUtils.join(
+                "<pre>\n  x &lt;&#x20AC;&euro;</pre>",
+                "<span title=\"a&b=c\">&nbsp;</span>"
+            ),
+            StringUtils.join(
+                "<html><head></head><body><pre>  x &lt;\u20ac\u20ac</pre>",
+                "<span title=\"a&amp;b=c\">\u00a0</span></body></html>"
+            ),
+        },
+        {
+            "<!-- top --><p>a<!-- in --></p></body><!-- after -->\n",
+            StringUtils.join(
+                "<!-- top --><html><head></head><body><p>a<!-- in --></p>",
+                "\n</body><!-- after --></html>"
+            ),
+        },
+        {
+            "<head><link rel=stylesheet href=a.css></head>\ntext",
+            StringUtils.join(
+                "<html><head><link rel=\"stylesheet\" href=\"a.css\"/>",
+                "</head>\n<body>text</body></html>"
+            ),
+        },
+        {
+            "<style>p > a { color: red }</style><p><b><i>x</i></b><a>y</a>",
+            StringUtils.join(
+                "<html><head><style>p > a { color: red }</style></head>",
+                "<body><p><b><i>x</i></b><a>y</a></p></body></html>"
+            ),
+        },
+    };
+
+    /**
+     * Markup can convert static pages.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void convertsStaticPages() throws Exception {
+        for (final String[] page : MarkupTest.PAGES) {
+            MatcherAssert.assertThat(
+                new Markup(page[0]).xhtml(),
+                Matchers.equalTo(page[1])
+            );
+        }
+    }
+
+    /**
+     * Markup can refuse pages it is not sure about.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void refusesDynamicPages() throws Exception {
+        final String[] pages = {
+            "<script>document.write('x')</script>",
+            "<p onclick='go()'>x</p>",
+            "<meta http-equiv='refresh' content='0;url=/x'>",
+            "<b><p>misnested</b></p>",
+            "<table><p>fostered</p></table>",
+            "<!DOCTYPE html PUBLIC '-//W3C//DTD HTML 4.01//EN'><p>x</p>",
+            "<p>AT&T &hearts;</p>",
+            "<svg><circle/></svg>",
+            "<select><option>a</select>",
+            "<a href='#'><a href='#'>nested</a></a>",
+        };
+        for (final String page : pages) {
+            MatcherAssert.assertThat(
+                new Markup(page).xhtml(),
+                Matchers.isEmptyString()
+            );
+        }
+    }
+
+    /**
+     * Markup can convert deep documents.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void convertsDeepDocument() throws Exception {
+        final int depth = 200;
+        MatcherAssert.assertThat(
+            new Markup(
+                StringUtils.join(
+                    StringUtils.repeat("<i>", depth), "x",
+                    StringUtils.repeat("</i>", depth)
+                )
+            ).xhtml(),
+            Matchers.containsString(
+                StringUtils.join(
+                    StringUtils.repeat("<i>", depth), "x",
+                    StringUtils.repeat("</i>", depth)
+                )
+            )
+        );
+    }
+
+    /**
+     * Markup can leave too deep documents to PhantomJS, which stops
+     * nesting elements at 512 levels.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rejectsTooDeepDocument() throws Exception {
+        final int depth = 600;
+        MatcherAssert.assertThat(
+            new Markup(
+                StringUtils.join(
+                    StringUtils.repeat("<i>", depth), "x",
+                    StringUtils.repeat("</i>", depth)
+                )
+            ).xhtml(),
+            Matchers.isEmptyString()
+        );
+    }
+
+    /**
+     * Markup can produce exactly the same XHTML as PhantomJS.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void conformsToPhantomJs() throws Exception {
+        Assume.assumeTrue(Phandom.isInstalled());
+        final Collection<String> pages = new LinkedList<String>();
+        for (final String[] page : MarkupTest.PAGES) {
+            pages.add(page[0]);
+        }
+        final Engine engine = new Engine.Default();
+        for (final String page : pages) {
+            MatcherAssert.assertThat(
+                new Markup(page).xhtml(),
+                Matchers.equalTo(
+                    engine.render(new Page.Text(page), new Options()).trim()
+                )
+            );
+        }
+    }
+
+}
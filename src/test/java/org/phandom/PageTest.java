@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Page}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class PageTest {
+
+    /**
+     * Page.Stream can delete its file right after the render.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void deletesStreamFileAfterRender() throws Exception {
+        final AtomicReference<File> file = new AtomicReference<File>();
+        final Engine engine = new Engine() {
+            @Override
+            public String render(final Page page, final Options options)
+                throws IOException {
+                file.set(new File(page.uri()));
+                return FileUtils.readFileToString(
+                    file.get(), CharEncoding.UTF_8
+                );
+            }
+            @Override
+            public InputStream stream(final Page page, final Options options)
+                throws IOException {
+                return IOUtils.toInputStream(
+                    this.render(page, options), CharEncoding.UTF_8
+                );
+            }
+        };
+        final Phandom phandom = new Phandom(
+            IOUtils.toInputStream("<html><p>once</p></html>")
+        );
+        MatcherAssert.assertThat(
+            phandom.dom(engine).getDocumentElement().getTextContent(),
+            Matchers.equalTo("once")
+        );
+        MatcherAssert.assertThat(file.get().exists(), Matchers.is(false));
+        try {
+            phandom.dom(engine);
+            Assert.fail("a stream page should render only once");
+        } catch (final IllegalStateException ex) {
+            MatcherAssert.assertThat(
+                ex.getMessage(), Matchers.containsString("only once")
+            );
+        }
+    }
+
+}
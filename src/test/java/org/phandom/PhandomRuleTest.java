@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.rexsl.test.XhtmlMatchers;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Test case for {@link PhandomRule}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class PhandomRuleTest {
+
+    /**
+     * PhandomRule can share one engine between rules.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sharesEngine() throws Exception {
+        MatcherAssert.assertThat(
+            new PhandomRule(2).engine(),
+            Matchers.sameInstance(new PhandomRule(2).engine())
+        );
+    }
+
+    /**
+     * PhandomRule can render pages by the shared engine.
+     * @throws Throwable If some problem inside
+     */
+    @Test
+    public void rendersPages() throws Throwable {
+        final PhandomRule rule = new PhandomRule(1);
+        rule.apply(
+            new Statement() {
+                @Override
+                public void evaluate() throws Exception {
+                    MatcherAssert.assertThat(
+                        XhtmlMatchers.xhtml(
+                            rule.dom(new Phandom("<html><p>shared</p></html>"))
+                        ),
+                        XhtmlMatchers.hasXPath("//body/p[.='shared']")
+                    );
+                }
+            },
+            Description.EMPTY
+        ).evaluate();
+    }
+
+}
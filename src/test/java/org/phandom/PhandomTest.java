@@ -30,19 +30,36 @@
 package org.phandom;
 
 import com.rexsl.test.XhtmlMatchers;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
 import org.apache.commons.lang3.StringUtils;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
-import org.junit.Assume;
-import org.junit.Before;
+import org.junit.Assert;
+import org.junit.ClassRule;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Test case for {@link Phandom}.
@@ -59,12 +76,11 @@ public final class PhandomTest {
     public transient TemporaryFolder temp = new TemporaryFolder();
 
     /**
-     * Check for Phantomjs availability.
+     * Skips all tests if PhantomJS is not installed.
+     * @checkstyle VisibilityModifier (3 lines)
      */
-    @Before
-    public void installed() {
-        Assume.assumeTrue(Phandom.isInstalled());
-    }
+    @ClassRule
+    public static final PhandomRule PHANTOM = new PhandomRule();
 
     /**
      * Phandom can build DOM document.
@@ -152,6 +168,298 @@ public final class PhandomTest {
         );
     }
 
+    /**
+     * Phandom can serialize very deep documents.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void serializesDeepDocument() throws Exception {
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(
+                new Phandom(
+                    StringUtils.join(
+                        "<html><body><script>",
+                        "var node = document.body;",
+                        "for (var i = 0; i < 5000; ++i) {",
+                        "node = node.appendChild(document.createElement('i'));",
+                        "}",
+                        "node.appendChild(document.createTextNode('<&>'));",
+                        "</script></body></html>"
+                    )
+                ).dom()
+            ),
+            XhtmlMatchers.hasXPath("//i[.='<&>' and count(ancestor::i)=4999]")
+        );
+    }
+
+    /**
+     * Phandom can serialize DOM exactly like the previous, recursive,
+     * serializer of dom.js did, see baselines in "xhtml" resources.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void serializesLikeBaselines() throws Exception {
+        final Engine engine = new Engine.Default();
+        for (final String name : new String[] {"mixed", "long", "deep"}) {
+            MatcherAssert.assertThat(
+                name,
+                engine.render(
+                    new Page.Text(PhandomTest.xhtml(name, "html")),
+                    new Options()
+                ).trim(),
+                Matchers.equalTo(PhandomTest.xhtml(name, "xhtml").trim())
+            );
+        }
+    }
+
+    /**
+     * Phandom can keep a page loaded in a session.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void keepsPageInSession() throws Exception {
+        final Session session = new Phandom(
+            StringUtils.join(
+                "<html><head><title>hey</title></head><body>",
+                "<input id='name'/><button id='add' onclick=\"",
+                "document.body.appendChild(document.createElement('b'));",
+                "\">add</button></body></html>"
+            )
+        ).session();
+        try {
+            session.click("#add");
+            session.click("#add");
+            session.type("#name", "Jeff");
+            MatcherAssert.assertThat(
+                XhtmlMatchers.xhtml(session.dom()),
+                XhtmlMatchers.hasXPath("/html/body[count(b)=2]")
+            );
+            MatcherAssert.assertThat(
+                session.eval("document.title"),
+                Matchers.equalTo("hey")
+            );
+            MatcherAssert.assertThat(
+                session.eval("document.getElementById('name').value"),
+                Matchers.equalTo("Jeff")
+            );
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Phandom can build DOM documents asynchronously.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void buildsDomAsynchronously() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Collection<Future<Document>> futures =
+                new ArrayList<Future<Document>>(0);
+            for (int idx = 0; idx < 4; ++idx) {
+                futures.add(
+                    new Phandom(
+                        String.format("<html><p>%d</p></html>", idx)
+                    ).domAsync(executor)
+                );
+            }
+            for (final Future<Document> future : futures) {
+                MatcherAssert.assertThat(
+                    XhtmlMatchers.xhtml(future.get()),
+                    XhtmlMatchers.hasXPath("/html/body/p")
+                );
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Phandom can render a batch of pages.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void rendersBatchOfPages() throws Exception {
+        final List<Future<Document>> doms = Phandom.batch(
+            Arrays.<Page>asList(
+                new Page.Text("<html><p>first</p></html>"),
+                new Page.Text("<html><script>a.call();</script></html>"),
+                new Page.Text("<html><p>third</p></html>")
+            )
+        );
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(doms.get(0).get()),
+            XhtmlMatchers.hasXPath("//p[.='first']")
+        );
+        try {
+            doms.get(1).get();
+            Assert.fail("broken javascript should fail");
+        } catch (final ExecutionException ex) {
+            MatcherAssert.assertThat(
+                ex.getCause(),
+                Matchers.instanceOf(IllegalStateException.class)
+            );
+        }
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(doms.get(2).get()),
+            XhtmlMatchers.hasXPath("//p[.='third']")
+        );
+    }
+
+    /**
+     * Phandom can stream SAX events and raw XHTML.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void streamsSaxEventsAndXhtml() throws Exception {
+        final Phandom phandom = new Phandom("<html><p>x</p><p>y</p></html>");
+        final AtomicInteger paragraphs = new AtomicInteger();
+        phandom.dom(
+            new DefaultHandler() {
+                @Override
+                public void startElement(final String uri, final String local,
+                    final String name, final Attributes attrs) {
+                    if ("p".equals(name)) {
+                        paragraphs.incrementAndGet();
+                    }
+                }
+            }
+        );
+        MatcherAssert.assertThat(paragraphs.get(), Matchers.equalTo(2));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        phandom.write(output);
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(output.toString(CharEncoding.UTF_8)),
+            XhtmlMatchers.hasXPath("/html/body[count(p)=2]")
+        );
+    }
+
+    /**
+     * Phandom can render text against a base URL.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void rendersTextWithBaseUrl() throws Exception {
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(
+                new Phandom(
+                    StringUtils.join(
+                        "<html><body><script>",
+                        "document.body.setAttribute('id', location.hostname);",
+                        "</script></body></html>"
+                    ),
+                    new URI("http://www.example.com/")
+                ).dom()
+            ),
+            XhtmlMatchers.hasXPath("//body[@id='www.example.com']")
+        );
+    }
+
+    /**
+     * Phandom can kill a page that never finishes.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void killsEndlessPage() throws Exception {
+        try {
+            new Phandom(
+                "<html><body><script>while (true) {}</script></body></html>"
+            ).with(new Options().timeout(1L, TimeUnit.SECONDS)).dom();
+            Assert.fail("endless page should time out");
+        } catch (final Timeout ex) {
+            MatcherAssert.assertThat(ex.phase(), Matchers.equalTo("load"));
+        }
+    }
+
+    /**
+     * Phandom can wait for content built asynchronously.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void waitsUntilPageIsReady() throws Exception {
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(
+                new Phandom(
+                    StringUtils.join(
+                        "<html><body><script>setTimeout(function(){",
+                        "var p=document.createElement('p');p.id='late';",
+                        "document.body.appendChild(p);},300);</script>",
+                        "</body></html>"
+                    )
+                ).with(
+                    new Options()
+                        .ready(new Ready.Selector("p#late"))
+                        .timeout(1L, TimeUnit.MINUTES)
+                ).dom()
+            ),
+            XhtmlMatchers.hasXPath("//p[@id='late']")
+        );
+    }
+
+    /**
+     * Phandom can select nodes inside the browser.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void selectsNodesInsideBrowser() throws Exception {
+        final Phandom phandom = new Phandom(
+            StringUtils.join(
+                "<html><body><div class='price' id='a'>$5</div>",
+                "<div class='other'>skip</div>",
+                "<script>document.getElementById('a').title='late';</script>",
+                "</body></html>"
+            )
+        );
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(phandom.query("//div[@class='price']")),
+            XhtmlMatchers.hasXPaths(
+                "/matches[count(match)=1]",
+                "/matches/match/div[@title='late' and .='$5']"
+            )
+        );
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(phandom.query(new Query.Css("div.other"))),
+            XhtmlMatchers.hasXPath("/matches/match/div[.='skip']")
+        );
+    }
+
+    /**
+     * Phandom can block resources by filters.
+     * @throws Exception If some problem inside
+     * @since 0.4
+     */
+    @Test
+    public void blocksFilteredResources() throws Exception {
+        MatcherAssert.assertThat(
+            XhtmlMatchers.xhtml(
+                new Phandom(
+                    StringUtils.join(
+                        "<html><body>",
+                        "<img src='http://localhost:1/a.png'/>",
+                        "</body></html>"
+                    )
+                ).with(new Options().deny(new Filter.Type("image"))).dom()
+            ),
+            XhtmlMatchers.hasXPath(
+                StringUtils.join(
+                    "/processing-instruction('phandom')",
+                    "[contains(.,'blocked=\"1\"')]"
+                )
+            )
+        );
+    }
+
     /**
      * Phandom can parse a web page.
      * @throws Exception If some problem inside
@@ -221,4 +529,23 @@ public final class PhandomTest {
         );
     }
 
+    /**
+     * Read a resource from the "xhtml" directory.
+     * @param name Name of the file
+     * @param ext Its extension
+     * @return Content
+     * @throws IOException If fails
+     */
+    private static String xhtml(final String name, final String ext)
+        throws IOException {
+        final InputStream input = PhandomTest.class.getResourceAsStream(
+            String.format("xhtml/%s.%s", name, ext)
+        );
+        try {
+            return IOUtils.toString(input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
 }
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Test case for {@link Phantom}.
+ *
+ * <p>Instead of phantomjs, a stub JVM process is started, which prints
+ * the given text to stdout and exits with the given code, that's why
+ * the test doesn't need PhantomJS.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class PhantomTest {
+
+    /**
+     * Phantom can give stdout to a reader that closes it.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsStdoutToParser() throws Exception {
+        final Document dom = new Phantom(
+            PhantomTest.stub("<html><p>stub</p></html>", 0), "{}", 0L
+        ).read(
+            new Phantom.Reader<Document>() {
+                @Override
+                public Document read(final InputStream stdout)
+                    throws IOException {
+                    try {
+                        return DocumentBuilderFactory.newInstance()
+                            .newDocumentBuilder().parse(stdout);
+                    } catch (final ParserConfigurationException ex) {
+                        throw new IOException(ex);
+                    } catch (final SAXException ex) {
+                        throw new IOException(ex);
+                    }
+                }
+            }
+        );
+        MatcherAssert.assertThat(
+            dom.getDocumentElement().getTextContent(),
+            Matchers.equalTo("stub")
+        );
+    }
+
+    /**
+     * Phantom can report a failure of the process.
+     * @throws Exception If some problem inside
+     */
+    @Test(expected = IllegalStateException.class)
+    public void reportsFailedProcess() throws Exception {
+        new Phantom(PhantomTest.stub("<p/>", 1), "{}", 0L).read(
+            new Phantom.Reader<String>() {
+                @Override
+                public String read(final InputStream stdout)
+                    throws IOException {
+                    return IOUtils.toString(stdout, CharEncoding.UTF_8);
+                }
+            }
+        );
+    }
+
+    /**
+     * Process builder of the stub.
+     * @param stdout What to print
+     * @param code Exit code
+     * @return Builder
+     */
+    private static ProcessBuilder stub(final String stdout, final int code) {
+        return new ProcessBuilder(
+            new File(
+                new File(System.getProperty("java.home"), "bin"), "java"
+            ).getAbsolutePath(),
+            "-cp", System.getProperty("java.class.path"),
+            PhantomTest.Stub.class.getName(),
+            stdout, Integer.toString(code)
+        );
+    }
+
+    /**
+     * Stub of phantomjs, which reads its stdin, prints the first argument
+     * and exits with the code from the second one.
+     */
+    public static final class Stub {
+        /**
+         * Utility class.
+         */
+        private Stub() {
+            // intentionally empty
+        }
+        /**
+         * Entry point.
+         * @param args Text to print and exit code
+         * @throws IOException If fails
+         */
+        public static void main(final String... args) throws IOException {
+            IOUtils.toString(System.in, CharEncoding.UTF_8);
+            System.out.print(args[0]);
+            System.out.flush();
+            System.exit(Integer.parseInt(args[1]));
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.rexsl.test.XhtmlMatchers;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Pool}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class PoolTest {
+
+    /**
+     * Check for Phantomjs availability.
+     */
+    @Before
+    public void installed() {
+        Assume.assumeTrue(Phandom.isInstalled());
+    }
+
+    /**
+     * Pool can render many pages with a few workers.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rendersManyPages() throws Exception {
+        final Pool pool = new Pool(2, 2);
+        try {
+            for (int idx = 0; idx < 5; ++idx) {
+                MatcherAssert.assertThat(
+                    XhtmlMatchers.xhtml(
+                        new Phandom(
+                            String.format("<html><p>#%d</p></html>", idx)
+                        ).dom(pool)
+                    ),
+                    XhtmlMatchers.hasXPath(
+                        String.format("//body/p[.='#%d']", idx)
+                    )
+                );
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Pool can survive a page with broken javascript.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void survivesBrokenJavascript() throws Exception {
+        final Pool pool = new Pool(1);
+        try {
+            try {
+                new Phandom(
+                    "<html><body><script>a.call();</script></body></html>"
+                ).dom(pool);
+            } catch (final IllegalStateException ex) {
+                MatcherAssert.assertThat(
+                    ex.getMessage(),
+                    Matchers.containsString("code #1")
+                );
+            }
+            MatcherAssert.assertThat(
+                XhtmlMatchers.xhtml(
+                    new Phandom("<html><p>ok</p></html>").dom(pool)
+                ),
+                XhtmlMatchers.hasXPath("//p[.='ok']")
+            );
+        } finally {
+            pool.close();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Regex}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class RegexTest {
+
+    /**
+     * Regex can accept the syntax that Java and JavaScript share.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void acceptsSharedSyntax() throws Exception {
+        final String[] regexes = {
+            "\\.mp4$",
+            "^https?://[a-z0-9.-]+/ads?/",
+            "(?:track|pixel)\\.gif\\b",
+            "[^\\]\\-/]{2,}?x(?=y)(?!z)",
+            "\\x41\\u00e9\\d+\\s*(a)\\1",
+        };
+        for (final String regex : regexes) {
+            MatcherAssert.assertThat(
+                new Regex(regex).portable(), Matchers.equalTo(regex)
+            );
+        }
+    }
+
+    /**
+     * Regex can reject the syntax that means something else in
+     * JavaScript, or fails there.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rejectsJavaOnlySyntax() throws Exception {
+        final String[] regexes = {
+            "(?<=a)b",
+            "(?<name>a)",
+            "(?i)ads",
+            "a++",
+            "\\Qa.b\\E",
+            "\\p{L}",
+            "[a[b]]",
+            "[a-z&&[^x]]",
+            "[]a]",
+            "a{",
+            "\\x4",
+            "[\\b]",
+            "(a",
+            "x\\",
+        };
+        for (final String regex : regexes) {
+            try {
+                new Regex(regex).portable();
+                Assert.fail(String.format("\"%s\" is not portable", regex));
+            } catch (final IllegalArgumentException ex) {
+                MatcherAssert.assertThat(
+                    ex.getMessage(), Matchers.notNullValue()
+                );
+            }
+        }
+    }
+
+}
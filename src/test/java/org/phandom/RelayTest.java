@@ -0,0 +1,376 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test case for {@link Relay}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class RelayTest {
+
+    /**
+     * Temporary folder.
+     * @checkstyle VisibilityModifier (3 lines)
+     */
+    @Rule
+    public transient TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Origin server.
+     */
+    private transient HttpServer origin;
+
+    /**
+     * Total requests seen by the origin.
+     */
+    private transient AtomicInteger total;
+
+    /**
+     * Start origin server.
+     * @throws Exception If some problem inside
+     */
+    @Before
+    public void start() throws Exception {
+        this.total = new AtomicInteger();
+        this.origin = HttpServer.create(new InetSocketAddress(0), 0);
+        final AtomicInteger counter = this.total;
+        this.origin.createContext(
+            "/",
+            new HttpHandler() {
+                @Override
+                public void handle(final HttpExchange exchange)
+                    throws IOException {
+                    final byte[] body = String.format(
+                        "body #%d", counter.incrementAndGet()
+                    ).getBytes(CharEncoding.UTF_8);
+                    exchange.getResponseHeaders().add(
+                        "Content-Type", "text/plain"
+                    );
+                    if ("HEAD".equals(exchange.getRequestMethod())) {
+                        exchange.getResponseHeaders().add(
+                            "Content-Length", Integer.toString(body.length)
+                        );
+                        // @checkstyle MagicNumber (1 line)
+                        exchange.sendResponseHeaders(200, -1L);
+                        exchange.close();
+                    } else {
+                        // @checkstyle MagicNumber (1 line)
+                        exchange.sendResponseHeaders(200, body.length);
+                        final OutputStream output =
+                            exchange.getResponseBody();
+                        output.write(body);
+                        output.close();
+                    }
+                }
+            }
+        );
+        this.origin.createContext(
+            "/echo",
+            new HttpHandler() {
+                @Override
+                public void handle(final HttpExchange exchange)
+                    throws IOException {
+                    final byte[] body = IOUtils.toByteArray(
+                        exchange.getRequestBody()
+                    );
+                    exchange.getResponseHeaders().add(
+                        // @checkstyle MagicNumber (1 line)
+                        "X-Long", StringUtils.repeat('x', 70000)
+                    );
+                    // @checkstyle MagicNumber (1 line)
+                    exchange.sendResponseHeaders(200, body.length);
+                    final OutputStream output = exchange.getResponseBody();
+                    output.write(body);
+                    output.close();
+                }
+            }
+        );
+        this.origin.start();
+    }
+
+    /**
+     * Stop origin server.
+     */
+    @After
+    public void stop() {
+        this.origin.stop(0);
+    }
+
+    /**
+     * Relay can serve the same resource from cache.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void servesFromCache() throws Exception {
+        final Relay relay = new Relay(this.temp.newFolder(), Relay.Mode.CACHE);
+        try {
+            final String url = this.url("/a.css");
+            MatcherAssert.assertThat(
+                RelayTest.fetch(relay, url), Matchers.equalTo("body #1")
+            );
+            MatcherAssert.assertThat(
+                RelayTest.fetch(relay, url), Matchers.equalTo("body #1")
+            );
+            MatcherAssert.assertThat(this.total.get(), Matchers.equalTo(1));
+            MatcherAssert.assertThat(relay.hits(), Matchers.equalTo(1L));
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Relay can replay recorded resources without network.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void replaysRecordedResources() throws Exception {
+        final File dir = this.temp.newFolder();
+        final String url = this.url("/b.js");
+        final Relay recorder = new Relay(dir, Relay.Mode.RECORD);
+        try {
+            RelayTest.fetch(recorder, url);
+            RelayTest.fetch(recorder, url);
+        } finally {
+            recorder.close();
+        }
+        this.origin.stop(0);
+        final Relay player = new Relay(dir, Relay.Mode.REPLAY);
+        try {
+            MatcherAssert.assertThat(
+                RelayTest.fetch(player, url), Matchers.equalTo("body #2")
+            );
+            final HttpURLConnection conn = RelayTest.open(
+                player, this.url("/unknown.png")
+            );
+            MatcherAssert.assertThat(
+                // @checkstyle MagicNumber (1 line)
+                conn.getResponseCode(), Matchers.equalTo(504)
+            );
+        } finally {
+            player.close();
+        }
+    }
+
+    /**
+     * Relay can evict least recently used resources.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void evictsOldResources() throws Exception {
+        final Relay relay = new Relay(
+            this.temp.newFolder(), Relay.Mode.CACHE, 1L
+        );
+        try {
+            RelayTest.fetch(relay, this.url("/c.png"));
+            RelayTest.fetch(relay, this.url("/c.png"));
+            MatcherAssert.assertThat(this.total.get(), Matchers.equalTo(2));
+            MatcherAssert.assertThat(
+                relay.evictions(), Matchers.equalTo(2L)
+            );
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Relay can pass the length of the content in a HEAD response.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void passesLengthOfHead() throws Exception {
+        final Relay relay = new Relay(this.temp.newFolder(), Relay.Mode.CACHE);
+        try {
+            final HttpURLConnection conn = RelayTest.open(
+                relay, this.url("/d.txt")
+            );
+            conn.setRequestMethod("HEAD");
+            MatcherAssert.assertThat(
+                conn.getHeaderField("Content-Length"), Matchers.equalTo("7")
+            );
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Relay can answer a malformed request.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rejectsMalformedRequest() throws Exception {
+        final Relay relay = new Relay(this.temp.newFolder(), Relay.Mode.CACHE);
+        try {
+            final String[] parts = relay.address().split(":");
+            final Socket socket = new Socket(
+                parts[0], Integer.parseInt(parts[1])
+            );
+            try {
+                socket.getOutputStream().write(
+                    "GET\r\n\r\n".getBytes(CharEncoding.US_ASCII)
+                );
+                MatcherAssert.assertThat(
+                    IOUtils.toString(
+                        socket.getInputStream(), CharEncoding.US_ASCII
+                    ),
+                    Matchers.startsWith("HTTP/1.1 400 ")
+                );
+            } finally {
+                socket.close();
+            }
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Relay can pass a chunked body of a request.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void passesChunkedBody() throws Exception {
+        final Relay relay = new Relay(this.temp.newFolder(), Relay.Mode.CACHE);
+        try {
+            final HttpURLConnection conn = RelayTest.open(
+                relay, this.url("/echo")
+            );
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setChunkedStreamingMode(2);
+            final OutputStream output = conn.getOutputStream();
+            output.write("in chunks".getBytes(CharEncoding.UTF_8));
+            output.close();
+            MatcherAssert.assertThat(
+                IOUtils.toString(conn.getInputStream(), CharEncoding.UTF_8),
+                Matchers.equalTo("in chunks")
+            );
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * Relay can cache a response with a header longer than 64Kb.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void cachesLongHeaders() throws Exception {
+        final Relay relay = new Relay(this.temp.newFolder(), Relay.Mode.CACHE);
+        try {
+            final String url = this.url("/echo");
+            RelayTest.fetch(relay, url);
+            final HttpURLConnection conn = RelayTest.open(relay, url);
+            MatcherAssert.assertThat(
+                conn.getHeaderField("X-Long").length(),
+                // @checkstyle MagicNumber (1 line)
+                Matchers.equalTo(70000)
+            );
+            MatcherAssert.assertThat(relay.hits(), Matchers.equalTo(1L));
+        } finally {
+            relay.close();
+        }
+    }
+
+    /**
+     * URL of the origin.
+     * @param path Path
+     * @return URL
+     */
+    private String url(final String path) {
+        return String.format(
+            "http://127.0.0.1:%d%s", this.origin.getAddress().getPort(), path
+        );
+    }
+
+    /**
+     * Fetch through the relay.
+     * @param relay The relay
+     * @param url URL to fetch
+     * @return Body
+     * @throws IOException If fails
+     */
+    private static String fetch(final Relay relay, final String url)
+        throws IOException {
+        final InputStream input = RelayTest.open(relay, url).getInputStream();
+        try {
+            return IOUtils.toString(input, CharEncoding.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Open connection through the relay.
+     * @param relay The relay
+     * @param url URL to open
+     * @return Connection
+     * @throws IOException If fails
+     */
+    private static HttpURLConnection open(final Relay relay, final String url)
+        throws IOException {
+        final String[] parts = relay.address().split(":");
+        return HttpURLConnection.class.cast(
+            new URL(url).openConnection(
+                new Proxy(
+                    Proxy.Type.HTTP,
+                    new InetSocketAddress(
+                        parts[0], Integer.parseInt(parts[1])
+                    )
+                )
+            )
+        );
+    }
+
+}
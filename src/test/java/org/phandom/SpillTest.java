@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Spill}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class SpillTest {
+
+    /**
+     * Spill can keep small content in memory.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsSmallContentInMemory() throws Exception {
+        final Spill spill = new Spill(100);
+        IOUtils.write("<p>small</p>", spill, CharEncoding.UTF_8);
+        MatcherAssert.assertThat(spill.spilled(), Matchers.is(false));
+        final InputStream input = spill.input();
+        try {
+            MatcherAssert.assertThat(
+                IOUtils.toString(input, CharEncoding.UTF_8),
+                Matchers.equalTo("<p>small</p>")
+            );
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Spill can move big content to disk.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void spillsBigContentToDisk() throws Exception {
+        final String content = StringUtils.repeat("<p>\u20ac</p>", 100000);
+        final Spill spill = new Spill(1000);
+        spill.write('<');
+        IOUtils.write(content.substring(1), spill, CharEncoding.UTF_8);
+        MatcherAssert.assertThat(spill.spilled(), Matchers.is(true));
+        MatcherAssert.assertThat(
+            spill.size(),
+            Matchers.equalTo(
+                (long) content.getBytes(CharEncoding.UTF_8).length
+            )
+        );
+        final InputStream input = spill.input();
+        try {
+            MatcherAssert.assertThat(
+                IOUtils.toString(input, CharEncoding.UTF_8),
+                Matchers.equalTo(content)
+            );
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Spill can give its content to many readers.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sharesContentWithManyReaders() throws Exception {
+        final String content = StringUtils.repeat("<b>shared</b>", 1000);
+        final Spill spill = new Spill(100);
+        IOUtils.write(content, spill, CharEncoding.UTF_8);
+        try {
+            final InputStream first = spill.share();
+            final InputStream second = spill.share();
+            MatcherAssert.assertThat(
+                IOUtils.toString(first, CharEncoding.UTF_8),
+                Matchers.equalTo(content)
+            );
+            first.close();
+            MatcherAssert.assertThat(
+                IOUtils.toString(second, CharEncoding.UTF_8),
+                Matchers.equalTo(content)
+            );
+            second.close();
+        } finally {
+            spill.close();
+        }
+    }
+
+    /**
+     * Spill can be taken away from its stream.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void detachesFromStream() throws Exception {
+        final Spill spill = new Spill(2);
+        IOUtils.write("detached", spill, CharEncoding.UTF_8);
+        final InputStream input = spill.input();
+        MatcherAssert.assertThat(
+            Spill.detach(input), Matchers.sameInstance(spill)
+        );
+        input.close();
+        try {
+            MatcherAssert.assertThat(
+                IOUtils.toString(spill.share(), CharEncoding.UTF_8),
+                Matchers.equalTo("detached")
+            );
+        } finally {
+            spill.close();
+        }
+        MatcherAssert.assertThat(
+            Spill.detach(new ByteArrayInputStream(new byte[0])),
+            Matchers.nullValue()
+        );
+    }
+
+}
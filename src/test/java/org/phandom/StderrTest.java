@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Stderr}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class StderrTest {
+
+    /**
+     * Stderr can track the last phase of rendering.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void tracksLastPhase() throws Exception {
+        final Stderr stderr = new Stderr(
+            new StderrTest.Fake(
+                "3 P load\n5 I URL: file:///tmp/a.html\n9 E oops\n12 P ready\n"
+            )
+        );
+        stderr.start();
+        MatcherAssert.assertThat(stderr.phase(), Matchers.equalTo("ready"));
+    }
+
+    /**
+     * Stderr can pick a level of diagnostics.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void picksLevel() throws Exception {
+        MatcherAssert.assertThat(
+            Stderr.level(), Matchers.isOneOf("error", "info", "debug")
+        );
+    }
+
+    /**
+     * Process that only has stderr.
+     */
+    private static final class Fake extends Process {
+        /**
+         * Content of stderr.
+         */
+        private final transient String text;
+        /**
+         * Ctor.
+         * @param stderr Content of stderr
+         */
+        Fake(final String stderr) {
+            super();
+            this.text = stderr;
+        }
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        @Override
+        public InputStream getErrorStream() {
+            try {
+                return new ByteArrayInputStream(
+                    this.text.getBytes(CharEncoding.UTF_8)
+                );
+            } catch (final UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+        @Override
+        public void destroy() {
+            // nothing to destroy
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2013-2017, phandom.org
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the phandom.org nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.phandom;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test case for {@link Temp} and {@link Sweep}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 0.4
+ */
+public final class TempTest {
+
+    /**
+     * Temporary folder.
+     * @checkstyle VisibilityModifier (3 lines)
+     */
+    @Rule
+    public transient TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Temp can delete its file on close.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void deletesFileOnClose() throws Exception {
+        final Temp tmp = new Temp(IOUtils.toInputStream("hey"), ".txt");
+        MatcherAssert.assertThat(tmp.file().exists(), Matchers.is(true));
+        tmp.close();
+        MatcherAssert.assertThat(tmp.file().exists(), Matchers.is(false));
+    }
+
+    /**
+     * Temp can copy file and non-file streams.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void copiesStreams() throws Exception {
+        final String content = StringUtils.repeat("<p>\u20ac</p>", 100000);
+        final File file = this.temp.newFile("a.html");
+        FileUtils.write(file, content, CharEncoding.UTF_8);
+        final InputStream stream = new FileInputStream(file);
+        try {
+            final Temp tmp = new Temp(stream, ".html");
+            try {
+                MatcherAssert.assertThat(
+                    FileUtils.readFileToString(tmp.file(), CharEncoding.UTF_8),
+                    Matchers.equalTo(content)
+                );
+            } finally {
+                tmp.close();
+            }
+        } finally {
+            stream.close();
+        }
+        final Temp tmp = new Temp(
+            new BufferedInputStream(
+                IOUtils.toInputStream(content, CharEncoding.UTF_8)
+            ),
+            ".html"
+        );
+        try {
+            MatcherAssert.assertThat(
+                FileUtils.readFileToString(tmp.file(), CharEncoding.UTF_8),
+                Matchers.equalTo(content)
+            );
+        } finally {
+            tmp.close();
+        }
+    }
+
+    /**
+     * Sweep can delete orphan files of this JVM only.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void deletesOwnOrphansOnly() throws Exception {
+        final File dir = this.temp.newFolder();
+        final File owned = new File(dir, "phandom-1.html");
+        final File given = new File(dir, "phandom-2.html");
+        final File orphan = new File(dir, "phandom-3.html");
+        final File alien = new File(dir, "phandom-4.html");
+        for (final File file : new File[] {owned, given, orphan, alien}) {
+            FileUtils.write(file, "<p/>");
+        }
+        final Object owner = new Object();
+        Sweep.track(owned, owner);
+        Sweep.release(given);
+        Object lost = new Object();
+        final WeakReference<Object> ref = new WeakReference<Object>(lost);
+        Sweep.track(orphan, lost);
+        lost = null;
+        while (ref.get() != null) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(1L);
+        }
+        new Sweep(TimeUnit.HOURS.toMillis(1L)).run();
+        MatcherAssert.assertThat(orphan.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(given.exists(), Matchers.is(true));
+        TimeUnit.MILLISECONDS.sleep(2L);
+        new Sweep(1L).run();
+        MatcherAssert.assertThat(given.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(owned.exists(), Matchers.is(true));
+        MatcherAssert.assertThat(alien.exists(), Matchers.is(true));
+        MatcherAssert.assertThat(owner, Matchers.notNullValue());
+        Sweep.forget(owned);
+    }
+
+}